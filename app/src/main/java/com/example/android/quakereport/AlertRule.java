@@ -0,0 +1,115 @@
+package com.example.android.quakereport;
+
+/**
+ * An {@link AlertRule} describes which earthquakes the user wants to be notified about,
+ * such as "M>=5 within 300 km of home" or "any M>=7 worldwide".
+ */
+public class AlertRule {
+
+    /**
+     * Mean radius of the Earth, in kilometers
+     */
+    private static final double EARTH_RADIUS_KM = 6371.0;
+
+    /**
+     * Unique id of the rule, used to dedupe alerts
+     */
+    private final String mId;
+
+    /**
+     * Minimum magnitude an earthquake must reach to match
+     */
+    private final double mMinMagnitude;
+
+    /**
+     * Latitude of the center of the area, in degrees
+     */
+    private final double mLatitude;
+
+    /**
+     * Longitude of the center of the area, in degrees
+     */
+    private final double mLongitude;
+
+    /**
+     * Radius of the area, in kilometers. Zero or less means worldwide.
+     */
+    private final double mRadiusKm;
+
+    /**
+     * Constructs a new {@link AlertRule} that matches earthquakes within an area.
+     *
+     * @param id           is the unique id of the rule
+     * @param minMagnitude is the minimum magnitude an earthquake must reach to match
+     * @param latitude     is the latitude of the center of the area, in degrees
+     * @param longitude    is the longitude of the center of the area, in degrees
+     * @param radiusKm     is the radius of the area in kilometers, or 0 to match worldwide
+     */
+    public AlertRule(String id, double minMagnitude, double latitude, double longitude, double radiusKm) {
+        mId = id;
+        mMinMagnitude = minMagnitude;
+        mLatitude = latitude;
+        mLongitude = longitude;
+        mRadiusKm = radiusKm;
+    }
+
+    /**
+     * Constructs a new {@link AlertRule} that matches earthquakes anywhere in the world.
+     *
+     * @param id           is the unique id of the rule
+     * @param minMagnitude is the minimum magnitude an earthquake must reach to match
+     */
+    public AlertRule(String id, double minMagnitude) {
+        this(id, minMagnitude, 0, 0, 0);
+    }
+
+    public String getId() {
+        return mId;
+    }
+
+    public double getMinMagnitude() {
+        return mMinMagnitude;
+    }
+
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    public double getLongitude() {
+        return mLongitude;
+    }
+
+    public double getRadiusKm() {
+        return mRadiusKm;
+    }
+
+    /**
+     * Returns true if the rule is not restricted to an area.
+     */
+    public boolean isWorldwide() {
+        return mRadiusKm <= 0;
+    }
+
+    /**
+     * Returns true if the given earthquake is strong enough and, for an area rule, close enough.
+     */
+    public boolean matches(Earthquake earthquake) {
+        if (earthquake.getMagnitude() < mMinMagnitude) {
+            return false;
+        }
+        return isWorldwide() || distanceKm(mLatitude, mLongitude,
+                earthquake.getLatitude(), earthquake.getLongitude()) <= mRadiusKm;
+    }
+
+    /**
+     * Returns the great-circle distance between two points, in kilometers (haversine formula).
+     */
+    public static double distanceKm(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1.0, Math.sqrt(a)));
+    }
+}
@@ -0,0 +1,259 @@
+package com.example.android.quakereport;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Evaluates {@link AlertRule}s against each batch of earthquakes returned by the loader.
+ * <p>
+ * Rules are indexed by spatial cell (area rules) and sorted by minimum magnitude, so each
+ * earthquake only looks at the rules of its own cell and stops at the first rule whose
+ * threshold is above its magnitude. The cost of a batch therefore grows with the number of
+ * matching rules, not with rules x earthquakes.
+ * <p>
+ * An earthquake only alerts once per rule: updates to the same event id are ignored.
+ * The class has no Android dependencies so it can be run against recorded feeds.
+ */
+public class AlertRuleEngine {
+
+    /**
+     * Size of a spatial cell, in degrees
+     */
+    private static final double CELL_SIZE_DEGREES = 5.0;
+
+    /**
+     * Number of cells around a parallel
+     */
+    private static final int LONGITUDE_CELLS = (int) (360 / CELL_SIZE_DEGREES);
+
+    /**
+     * Approximate length of one degree of latitude, in kilometers
+     */
+    private static final double KM_PER_DEGREE = 111.2;
+
+    /**
+     * Maximum number of (rule, event) pairs remembered for deduplication
+     */
+    private static final int MAX_ALERTED_KEYS = 2000;
+
+    /**
+     * Orders rules by increasing minimum magnitude, so a scan can stop early
+     */
+    private static final Comparator<AlertRule> BY_MIN_MAGNITUDE = new Comparator<AlertRule>() {
+        @Override
+        public int compare(AlertRule a, AlertRule b) {
+            return Double.compare(a.getMinMagnitude(), b.getMinMagnitude());
+        }
+    };
+
+    /**
+     * A rule that matched an earthquake.
+     */
+    public static class Alert {
+
+        private final AlertRule mRule;
+
+        private final Earthquake mEarthquake;
+
+        Alert(AlertRule rule, Earthquake earthquake) {
+            mRule = rule;
+            mEarthquake = earthquake;
+        }
+
+        public AlertRule getRule() {
+            return mRule;
+        }
+
+        public Earthquake getEarthquake() {
+            return mEarthquake;
+        }
+
+        /**
+         * Returns the "ruleId/eventId" key of the alert, unique per rule and event.
+         */
+        public String getKey() {
+            return keyOf(mRule, mEarthquake);
+        }
+    }
+
+    /**
+     * Worldwide rules, sorted by minimum magnitude
+     */
+    private List<AlertRule> mWorldwideRules = new ArrayList<>();
+
+    /**
+     * Area rules of each spatial cell, sorted by minimum magnitude
+     */
+    private Map<Integer, List<AlertRule>> mCellRules = new HashMap<>();
+
+    /**
+     * "ruleId/eventId" keys that already alerted, oldest first
+     */
+    private final LinkedHashSet<String> mAlertedKeys = new LinkedHashSet<>();
+
+    /**
+     * Constructs a new {@link AlertRuleEngine}.
+     *
+     * @param rules       to evaluate
+     * @param alertedKeys keys previously returned by {@link #getAlertedKeys()}, so events
+     *                    that already alerted before a restart stay silent
+     */
+    public AlertRuleEngine(Collection<AlertRule> rules, Collection<String> alertedKeys) {
+        setRules(rules);
+        if (alertedKeys != null) {
+            mAlertedKeys.addAll(alertedKeys);
+        }
+    }
+
+    /**
+     * Replaces the rules and rebuilds the index. Already alerted events stay deduped.
+     */
+    public synchronized void setRules(Collection<AlertRule> rules) {
+        List<AlertRule> worldwideRules = new ArrayList<>();
+        Map<Integer, List<AlertRule>> cellRules = new HashMap<>();
+
+        for (AlertRule rule : rules) {
+            if (rule.isWorldwide()) {
+                worldwideRules.add(rule);
+            } else {
+                for (int cell : coveredCells(rule)) {
+                    List<AlertRule> list = cellRules.get(cell);
+                    if (list == null) {
+                        list = new ArrayList<>();
+                        cellRules.put(cell, list);
+                    }
+                    list.add(rule);
+                }
+            }
+        }
+
+        Collections.sort(worldwideRules, BY_MIN_MAGNITUDE);
+        for (List<AlertRule> list : cellRules.values()) {
+            Collections.sort(list, BY_MIN_MAGNITUDE);
+        }
+        mWorldwideRules = worldwideRules;
+        mCellRules = cellRules;
+    }
+
+    /**
+     * Returns the rules matched by the given batch of new or updated earthquakes, skipping
+     * the events that already alerted for the same rule.
+     */
+    public synchronized List<Alert> evaluate(List<Earthquake> earthquakes) {
+        List<Alert> alerts = new ArrayList<>();
+        if (earthquakes == null) {
+            return alerts;
+        }
+        for (Earthquake earthquake : earthquakes) {
+            collectMatches(mWorldwideRules, earthquake, alerts);
+            List<AlertRule> cellRules = mCellRules.get(
+                    cellOf(earthquake.getLatitude(), earthquake.getLongitude()));
+            if (cellRules != null) {
+                collectMatches(cellRules, earthquake, alerts);
+            }
+        }
+        return alerts;
+    }
+
+    /**
+     * Returns the keys of the (rule, event) pairs that already alerted, to persist them.
+     */
+    public synchronized Set<String> getAlertedKeys() {
+        return new LinkedHashSet<>(mAlertedKeys);
+    }
+
+    /**
+     * Adds the matches of a sorted rule list, stopping at the first threshold too high.
+     */
+    private void collectMatches(List<AlertRule> sortedRules, Earthquake earthquake, List<Alert> alerts) {
+        double magnitude = earthquake.getMagnitude();
+        for (AlertRule rule : sortedRules) {
+            if (rule.getMinMagnitude() > magnitude) {
+                break;
+            }
+            if (rule.matches(earthquake) && markAlerted(keyOf(rule, earthquake))) {
+                alerts.add(new Alert(rule, earthquake));
+            }
+        }
+    }
+
+    private static String keyOf(AlertRule rule, Earthquake earthquake) {
+        return rule.getId() + "/" + earthquake.getId();
+    }
+
+    /**
+     * Records the key, evicting the oldest one when full. Returns false if already present.
+     */
+    private boolean markAlerted(String key) {
+        if (!mAlertedKeys.add(key)) {
+            return false;
+        }
+        if (mAlertedKeys.size() > MAX_ALERTED_KEYS) {
+            mAlertedKeys.remove(mAlertedKeys.iterator().next());
+        }
+        return true;
+    }
+
+    /**
+     * Returns the cells overlapped by the bounding box of an area rule.
+     */
+    private static List<Integer> coveredCells(AlertRule rule) {
+        double dLat = rule.getRadiusKm() / KM_PER_DEGREE;
+        double minLat = Math.max(-90, rule.getLatitude() - dLat);
+        double maxLat = Math.min(90, rule.getLatitude() + dLat);
+
+        // Close to the poles a circle spans every longitude
+        double cosLat = Math.cos(Math.toRadians(Math.max(Math.abs(minLat), Math.abs(maxLat))));
+        double dLon = cosLat > 0 ? dLat / cosLat : 360;
+
+        int firstLatCell = latitudeCell(minLat);
+        int lastLatCell = latitudeCell(maxLat);
+        int firstLonCell;
+        int lonCellCount;
+        if (dLon >= 180) {
+            firstLonCell = 0;
+            lonCellCount = LONGITUDE_CELLS;
+        } else {
+            firstLonCell = longitudeCell(rule.getLongitude() - dLon);
+            int lastLonCell = longitudeCell(rule.getLongitude() + dLon);
+            lonCellCount = wrap(lastLonCell - firstLonCell) + 1;
+        }
+
+        List<Integer> cells = new ArrayList<>();
+        for (int latCell = firstLatCell; latCell <= lastLatCell; latCell++) {
+            for (int i = 0; i < lonCellCount; i++) {
+                cells.add(latCell * LONGITUDE_CELLS + (firstLonCell + i) % LONGITUDE_CELLS);
+            }
+        }
+        return cells;
+    }
+
+    private static int cellOf(double latitude, double longitude) {
+        return latitudeCell(latitude) * LONGITUDE_CELLS + longitudeCell(longitude);
+    }
+
+    private static int latitudeCell(double latitude) {
+        int cell = (int) Math.floor((latitude + 90) / CELL_SIZE_DEGREES);
+        return Math.min(cell, (int) (180 / CELL_SIZE_DEGREES) - 1);
+    }
+
+    private static int longitudeCell(double longitude) {
+        int cell = (int) Math.floor((longitude + 180) / CELL_SIZE_DEGREES);
+        return wrap(cell);
+    }
+
+    /**
+     * Wraps a longitude cell index into [0, LONGITUDE_CELLS).
+     */
+    private static int wrap(int cell) {
+        int wrapped = cell % LONGITUDE_CELLS;
+        return wrapped < 0 ? wrapped + LONGITUDE_CELLS : wrapped;
+    }
+}
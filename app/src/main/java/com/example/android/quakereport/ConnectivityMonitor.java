@@ -0,0 +1,315 @@
+package com.example.android.quakereport;
+
+import android.annotation.TargetApi;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkInfo;
+import android.net.NetworkRequest;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.core.net.ConnectivityManagerCompat;
+
+/**
+ * A {@link ConnectivityMonitor} keeps track of the default network through
+ * {@link ConnectivityManager.NetworkCallback} and notifies its {@link Listener} on the main
+ * thread when a usable network appears, so a pending load can be resumed without the user
+ * having to tap retry.
+ * <p>
+ * The connection state is cached in memory, so {@link #isConnected()} and
+ * {@link #getFetchStrategy()} are cheap field reads that can be called from any thread.
+ */
+public class ConnectivityMonitor {
+
+    /**
+     * Tag for log messages
+     */
+    private static final String LOG_TAG = ConnectivityMonitor.class.getSimpleName();
+
+    /**
+     * How much data should be fetched over the current network.
+     */
+    public enum FetchStrategy {
+        /**
+         * Unmetered network: fetch the full result set.
+         */
+        FULL,
+        /**
+         * Metered network: only fetch events updated since the last successful load.
+         */
+        DELTA,
+        /**
+         * No usable network: do not fetch at all.
+         */
+        NONE
+    }
+
+    /**
+     * Callback invoked on the main thread when a usable network becomes available.
+     */
+    public interface Listener {
+        void onNetworkAvailable(FetchStrategy strategy);
+    }
+
+    private final ConnectivityManager mConnectivityManager;
+
+    private final Context mContext;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private final Listener mListener;
+
+    /**
+     * Last known connection state, written from the callback thread.
+     */
+    private volatile boolean mConnected;
+
+    /**
+     * Last known metered state, written from the callback thread.
+     */
+    private volatile boolean mMetered;
+
+    /**
+     * True when a load was requested while offline and should start once a network appears.
+     */
+    private boolean mPendingLoad;
+
+    private ConnectivityManager.NetworkCallback mNetworkCallback;
+
+    private BroadcastReceiver mConnectivityReceiver;
+
+    /**
+     * Constructs a new {@link ConnectivityMonitor}.
+     *
+     * @param context  of the app
+     * @param listener to notify when a queued load can be resumed
+     */
+    public ConnectivityMonitor(Context context, Listener listener) {
+        mContext = context.getApplicationContext();
+        mConnectivityManager = (ConnectivityManager) mContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        mListener = listener;
+        refreshFromActiveNetwork();
+    }
+
+    /**
+     * Starts listening for network changes. Call from onStart().
+     */
+    public void register() {
+        if (mNetworkCallback != null || mConnectivityReceiver != null) {
+            return;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            registerNetworkCallback();
+        } else {
+            registerConnectivityReceiver();
+        }
+
+        // The network may have come back while we were not listening
+        boolean wasConnected = mConnected;
+        refreshFromActiveNetwork();
+        if (mConnected && !wasConnected) {
+            resumePendingLoad();
+        }
+    }
+
+    /**
+     * Stops listening for network changes. Call from onStop().
+     */
+    public void unregister() {
+        if (mNetworkCallback != null) {
+            unregisterNetworkCallback();
+            mNetworkCallback = null;
+        }
+        if (mConnectivityReceiver != null) {
+            mContext.unregisterReceiver(mConnectivityReceiver);
+            mConnectivityReceiver = null;
+        }
+        mMainHandler.removeCallbacksAndMessages(null);
+    }
+
+    /**
+     * Queues a load to be resumed as soon as a usable network appears.
+     */
+    public void queuePendingLoad() {
+        mPendingLoad = true;
+    }
+
+    /**
+     * Returns true if a load is waiting for the network.
+     */
+    public boolean hasPendingLoad() {
+        return mPendingLoad;
+    }
+
+    /**
+     * Returns the last known connection state.
+     */
+    public boolean isConnected() {
+        return mConnected;
+    }
+
+    /**
+     * Returns how much data should be fetched over the current network.
+     */
+    public FetchStrategy getFetchStrategy() {
+        return fetchStrategyFor(mConnected, mMetered);
+    }
+
+    /**
+     * Returns how much data should be fetched over the active network right now, for screens
+     * that only need the state once and do not wait for the network.
+     */
+    public static FetchStrategy getCurrentFetchStrategy(Context context) {
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) context.getApplicationContext().getSystemService(Context.CONNECTIVITY_SERVICE);
+        return fetchStrategyFor(isActiveNetworkUsable(connectivityManager),
+                ConnectivityManagerCompat.isActiveNetworkMetered(connectivityManager));
+    }
+
+    private static FetchStrategy fetchStrategyFor(boolean connected, boolean metered) {
+        if (!connected) {
+            return FetchStrategy.NONE;
+        }
+        return metered ? FetchStrategy.DELTA : FetchStrategy.FULL;
+    }
+
+    /**
+     * Reads the state of the active network, for the initial value.
+     */
+    private void refreshFromActiveNetwork() {
+        mConnected = isActiveNetworkUsable(mConnectivityManager);
+        mMetered = ConnectivityManagerCompat.isActiveNetworkMetered(mConnectivityManager);
+    }
+
+    /**
+     * Notifies the state of the active network, for the callbacks that are not about the
+     * default network only.
+     */
+    private void onActiveNetworkChanged() {
+        onNetworkStateChanged(isActiveNetworkUsable(mConnectivityManager),
+                ConnectivityManagerCompat.isActiveNetworkMetered(mConnectivityManager));
+    }
+
+    /**
+     * Returns true if the active network reaches the internet.
+     */
+    @SuppressWarnings("deprecation")
+    private static boolean isActiveNetworkUsable(ConnectivityManager connectivityManager) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            return isActiveNetworkValidated(connectivityManager);
+        }
+        NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+        return networkInfo != null && networkInfo.isConnected();
+    }
+
+    @TargetApi(Build.VERSION_CODES.M)
+    private static boolean isActiveNetworkValidated(ConnectivityManager connectivityManager) {
+        Network network = connectivityManager.getActiveNetwork();
+        return network != null && isUsable(connectivityManager.getNetworkCapabilities(network));
+    }
+
+    /**
+     * Returns true if a network with the given capabilities reaches the internet. On API 23+
+     * that means validated, not still behind a captive portal.
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static boolean isUsable(NetworkCapabilities capabilities) {
+        if (capabilities == null || !capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)) {
+            return false;
+        }
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.M
+                || capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED);
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private void registerNetworkCallback() {
+        mNetworkCallback = new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onCapabilitiesChanged(Network network, NetworkCapabilities capabilities) {
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                    boolean metered = !capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED);
+                    onNetworkStateChanged(isUsable(capabilities), metered);
+                } else {
+                    // Any network with internet is reported, not just the default one
+                    onActiveNetworkChanged();
+                }
+            }
+
+            @Override
+            public void onLost(Network network) {
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                    onNetworkStateChanged(false, mMetered);
+                } else {
+                    // Another network, e.g. Wi-Fi during a hand-over from cellular, may still be up
+                    onActiveNetworkChanged();
+                }
+            }
+        };
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            mConnectivityManager.registerDefaultNetworkCallback(mNetworkCallback);
+        } else {
+            NetworkRequest request = new NetworkRequest.Builder()
+                    .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                    .build();
+            mConnectivityManager.registerNetworkCallback(request, mNetworkCallback);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private void unregisterNetworkCallback() {
+        try {
+            mConnectivityManager.unregisterNetworkCallback(mNetworkCallback);
+        } catch (IllegalArgumentException e) {
+            Log.w(LOG_TAG, "Network callback was not registered", e);
+        }
+    }
+
+    private void registerConnectivityReceiver() {
+        mConnectivityReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                onActiveNetworkChanged();
+            }
+        };
+        mContext.registerReceiver(mConnectivityReceiver,
+                new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+    }
+
+    /**
+     * Records the new state and, if a load is queued and the network just became usable,
+     * resumes it on the main thread.
+     */
+    private void onNetworkStateChanged(boolean connected, boolean metered) {
+        boolean becameConnected = connected && !mConnected;
+        mConnected = connected;
+        mMetered = metered;
+        Log.i(LOG_TAG, "TEST: network state changed, connected=" + connected + " metered=" + metered);
+
+        if (becameConnected) {
+            resumePendingLoad();
+        }
+    }
+
+    /**
+     * Hands the queued load, if any, back to the listener on the main thread.
+     */
+    private void resumePendingLoad() {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mPendingLoad && mConnected) {
+                    mPendingLoad = false;
+                    mListener.onNetworkAvailable(getFetchStrategy());
+                }
+            }
+        });
+    }
+}
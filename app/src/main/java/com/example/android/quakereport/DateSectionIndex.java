@@ -0,0 +1,215 @@
+package com.example.android.quakereport;
+
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Sections of a list of earthquakes sorted from the newest to the oldest, one per day (or per
+ * hour when everything indexed so far spans less than two days), for the fast scroller of the
+ * list.
+ * <p>
+ * The index is a table of the position where each hour starts, built in one pass while
+ * loading. A page of older earthquakes is appended without rebuilding it, and may widen the
+ * span enough to switch the sections to days, which are then derived from the hours. Looking up
+ * the section of a position is a binary search over the sections. If the list turns out not to
+ * be sorted by time (e.g. ordered by magnitude), the index has no sections.
+ */
+public class DateSectionIndex {
+
+    private static final long HOUR_MILLIS = 60 * 60 * 1000;
+
+    private static final long DAY_MILLIS = 24 * HOUR_MILLIS;
+
+    /**
+     * Lists spanning less than this are split by hour instead of by day
+     */
+    private static final long HOURLY_SPAN_MILLIS = 2 * DAY_MILLIS;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final TimeZone mTimeZone = TimeZone.getDefault();
+
+    /**
+     * Position of the first earthquake of each hour, increasing
+     */
+    private int[] mHourPositions = new int[INITIAL_CAPACITY];
+
+    /**
+     * Time of the first earthquake of each hour
+     */
+    private long[] mHourTimes = new long[INITIAL_CAPACITY];
+
+    private int mHourCount;
+
+    private int mItemCount;
+
+    /**
+     * Local hour of the last indexed earthquake
+     */
+    private long mLastHourKey = Long.MAX_VALUE;
+
+    /**
+     * Times of the newest and the oldest indexed earthquakes
+     */
+    private long mNewestTime;
+    private long mOldestTime;
+
+    private boolean mSorted = true;
+
+    /**
+     * Sections for the current span, derived from the hours when the fast scroller asks for
+     * them; null after an append
+     */
+    private int[] mPositions;
+    private long[] mTimes;
+    private int mSectionCount;
+    private long mSectionMillis;
+
+    /**
+     * Labels of the sections, built when the fast scroller first asks for them
+     */
+    private String[] mLabels;
+
+    /**
+     * Builds the index of the given earthquakes.
+     */
+    public static DateSectionIndex build(List<Earthquake> earthquakes) {
+        DateSectionIndex index = new DateSectionIndex();
+        index.append(earthquakes);
+        return index;
+    }
+
+    /**
+     * Indexes a page of earthquakes added at the end of the list.
+     */
+    public void append(List<Earthquake> earthquakes) {
+        for (int i = 0; i < earthquakes.size() && mSorted; i++) {
+            long time = earthquakes.get(i).getTimeInMilliseconds();
+            long key = keyOf(time, HOUR_MILLIS);
+            if (mItemCount + i == 0) {
+                mNewestTime = time;
+            }
+            if (key > mLastHourKey) {
+                // Newer than the previous earthquake: not sorted by time
+                mSorted = false;
+                mHourCount = 0;
+            } else if (key < mLastHourKey) {
+                addHour(mItemCount + i, time);
+                mLastHourKey = key;
+            }
+            mOldestTime = time;
+        }
+        mItemCount += earthquakes.size();
+        mPositions = null;
+        mLabels = null;
+    }
+
+    /**
+     * Returns the number of earthquakes indexed so far.
+     */
+    public int getItemCount() {
+        return mItemCount;
+    }
+
+    /**
+     * Returns the labels of the sections.
+     */
+    public Object[] getSections() {
+        ensureSections();
+        if (mLabels == null) {
+            SimpleDateFormat format = new SimpleDateFormat(
+                    mSectionMillis == DAY_MILLIS ? "LLL dd" : "LLL dd, h a", Locale.getDefault());
+            mLabels = new String[mSectionCount];
+            for (int i = 0; i < mSectionCount; i++) {
+                mLabels[i] = format.format(new Date(mTimes[i]));
+            }
+        }
+        return mLabels;
+    }
+
+    /**
+     * Returns the position of the first earthquake of the given section.
+     */
+    public int getPositionForSection(int section) {
+        ensureSections();
+        if (mSectionCount == 0) {
+            return 0;
+        }
+        return mPositions[Math.max(0, Math.min(section, mSectionCount - 1))];
+    }
+
+    /**
+     * Returns the section of the earthquake at the given position.
+     */
+    public int getSectionForPosition(int position) {
+        ensureSections();
+        // Last section starting at or before the position
+        int low = 0;
+        int high = mSectionCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (mPositions[mid] <= position) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Picks hours or days from the span of everything indexed so far, and merges the hours
+     * into days if needed.
+     */
+    private void ensureSections() {
+        if (mPositions != null) {
+            return;
+        }
+        if (mNewestTime - mOldestTime < HOURLY_SPAN_MILLIS) {
+            mSectionMillis = HOUR_MILLIS;
+            mPositions = mHourPositions;
+            mTimes = mHourTimes;
+            mSectionCount = mHourCount;
+            return;
+        }
+        mSectionMillis = DAY_MILLIS;
+        mPositions = new int[Math.max(1, mHourCount)];
+        mTimes = new long[mPositions.length];
+        mSectionCount = 0;
+        long lastDayKey = Long.MAX_VALUE;
+        for (int i = 0; i < mHourCount; i++) {
+            // A local hour never straddles two local days
+            long dayKey = keyOf(mHourTimes[i], DAY_MILLIS);
+            if (dayKey != lastDayKey) {
+                mPositions[mSectionCount] = mHourPositions[i];
+                mTimes[mSectionCount] = mHourTimes[i];
+                mSectionCount++;
+                lastDayKey = dayKey;
+            }
+        }
+    }
+
+    /**
+     * Returns the local day or hour of the given time, as a number of sections since the Epoch.
+     */
+    private long keyOf(long timeInMilliseconds, long sectionMillis) {
+        long localTime = timeInMilliseconds + mTimeZone.getOffset(timeInMilliseconds);
+        long key = localTime / sectionMillis;
+        // Round towards negative infinity for times before the Epoch
+        return localTime < 0 && localTime % sectionMillis != 0 ? key - 1 : key;
+    }
+
+    private void addHour(int position, long time) {
+        if (mHourCount == mHourPositions.length) {
+            mHourPositions = Arrays.copyOf(mHourPositions, mHourCount * 2);
+            mHourTimes = Arrays.copyOf(mHourTimes, mHourCount * 2);
+        }
+        mHourPositions[mHourCount] = position;
+        mHourTimes[mHourCount] = time;
+        mHourCount++;
+    }
+}
@@ -0,0 +1,465 @@
+package com.example.android.quakereport;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodes the USGS "csv" and "text" (pipe separated) formats.
+ * <p>
+ * These formats are much smaller than GeoJSON. The whole body is read into a single byte
+ * buffer and each line is split in place into field offsets; numbers and timestamps are
+ * parsed straight from the bytes, so only the id and place of each event become Strings.
+ */
+public class DelimitedTextDecoder implements EarthquakeDecoder {
+
+    /**
+     * Tag for the log messages
+     */
+    private static final String LOG_TAG = DelimitedTextDecoder.class.getSimpleName();
+
+    /**
+     * Neither format carries the event page URL, so for USGS it is rebuilt from the event id
+     * the same way the GeoJSON "url" property is built.
+     */
+    private static final String USGS_EVENT_PAGE_URL = "https://earthquake.usgs.gov/earthquakes/eventpage/"
+            + EarthquakeSource.EVENT_ID_PLACEHOLDER;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    /**
+     * Powers of ten that are exactly representable as doubles
+     */
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     * Largest mantissa that converts to a double without rounding
+     */
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private final String mFormat;
+
+    private final byte mDelimiter;
+
+    /**
+     * Parts of the event page URL before and after the event id, or null if the events have
+     * no page
+     */
+    private final String mEventUrlPrefix;
+    private final String mEventUrlSuffix;
+
+    /**
+     * Header names of the id, time, latitude, longitude, depth, magnitude and place columns
+     */
+    private final String[] mColumnNames;
+
+    private static final int ID = 0;
+    private static final int TIME = 1;
+    private static final int LATITUDE = 2;
+    private static final int LONGITUDE = 3;
+    private static final int DEPTH = 4;
+    private static final int MAGNITUDE = 5;
+    private static final int PLACE = 6;
+
+    private DelimitedTextDecoder(String format, char delimiter, String eventUrlTemplate, String... columnNames) {
+        mFormat = format;
+        mDelimiter = (byte) delimiter;
+        int placeholder = eventUrlTemplate == null ? -1 : eventUrlTemplate.indexOf(EarthquakeSource.EVENT_ID_PLACEHOLDER);
+        if (placeholder >= 0) {
+            // Split once, so each event only concatenates its id
+            mEventUrlPrefix = eventUrlTemplate.substring(0, placeholder);
+            mEventUrlSuffix = eventUrlTemplate.substring(placeholder + EarthquakeSource.EVENT_ID_PLACEHOLDER.length());
+        } else {
+            mEventUrlPrefix = null;
+            mEventUrlSuffix = null;
+        }
+        mColumnNames = columnNames;
+    }
+
+    /**
+     * Returns a decoder for the USGS "csv" format.
+     */
+    public static DelimitedTextDecoder csv() {
+        return new DelimitedTextDecoder("csv", ',', USGS_EVENT_PAGE_URL,
+                "id", "time", "latitude", "longitude", "depth", "mag", "place");
+    }
+
+    /**
+     * Returns a decoder for the USGS flavour of the FDSN "text" format.
+     */
+    public static DelimitedTextDecoder text() {
+        return text(USGS_EVENT_PAGE_URL);
+    }
+
+    /**
+     * Returns a decoder for the FDSN "text" format, where the header starts with '#'.
+     *
+     * @param eventUrlTemplate is the URL of the page of an event, with
+     *                         {@link EarthquakeSource#EVENT_ID_PLACEHOLDER} where the event id
+     *                         goes, or null to leave the URL of each event empty
+     */
+    public static DelimitedTextDecoder text(String eventUrlTemplate) {
+        return new DelimitedTextDecoder("text", '|', eventUrlTemplate,
+                "EventID", "Time", "Latitude", "Longitude", "Depth/km", "Magnitude", "EventLocationName");
+    }
+
+    @Override
+    public String getFormat() {
+        return mFormat;
+    }
+
+    @Override
+    public List<Earthquake> decode(InputStream inputStream) throws IOException {
+        LineReader reader = new LineReader(readFully(inputStream), mDelimiter);
+        if (reader.mLength == 0 || !reader.nextLine()) {
+            return null;
+        }
+
+        // Map our columns to their position in the header
+        int[] columns = new int[mColumnNames.length];
+        int maxColumn = 0;
+        for (int c = 0; c < mColumnNames.length; c++) {
+            columns[c] = -1;
+            for (int field = 0; field < reader.mFieldCount; field++) {
+                if (reader.headerNameEquals(field, mColumnNames[c])) {
+                    columns[c] = field;
+                    maxColumn = Math.max(maxColumn, field);
+                    break;
+                }
+            }
+            if (columns[c] < 0) {
+                // Not a body we can read, e.g. an error page: fail like an unparsable response
+                Log.e(LOG_TAG, "Missing column " + mColumnNames[c] + " in the " + mFormat + " header");
+                return null;
+            }
+        }
+
+        List<Earthquake> earthquakes = new ArrayList<>();
+        while (reader.nextLine()) {
+            if (reader.mFieldCount <= maxColumn || reader.isEmpty(columns[MAGNITUDE])) {
+                // Skip blank lines and events without a magnitude
+                continue;
+            }
+            try {
+                String id = reader.string(columns[ID]);
+                earthquakes.add(new Earthquake(
+                        id,
+                        reader.parseDouble(columns[MAGNITUDE]),
+                        reader.string(columns[PLACE]),
+                        reader.parseTime(columns[TIME]),
+                        mEventUrlPrefix != null ? mEventUrlPrefix + id + mEventUrlSuffix : "",
+                        reader.parseDouble(columns[LATITUDE]),
+                        reader.parseDouble(columns[LONGITUDE]),
+                        reader.parseDouble(columns[DEPTH])));
+            } catch (NumberFormatException e) {
+                Log.e(LOG_TAG, "Problem parsing an earthquake " + mFormat + " line", e);
+            }
+        }
+        return earthquakes;
+    }
+
+    /**
+     * Reads the whole stream into a single byte array.
+     */
+    private static Content readFully(InputStream inputStream) throws IOException {
+        byte[] buffer = new byte[16 * 1024];
+        int length = 0;
+        if (inputStream != null) {
+            int read;
+            while ((read = inputStream.read(buffer, length, buffer.length - length)) != -1) {
+                length += read;
+                if (length == buffer.length) {
+                    byte[] larger = new byte[buffer.length * 2];
+                    System.arraycopy(buffer, 0, larger, 0, length);
+                    buffer = larger;
+                }
+            }
+        }
+        return new Content(buffer, length);
+    }
+
+    /**
+     * A byte array and the length of its content.
+     */
+    private static final class Content {
+        final byte[] mBytes;
+        final int mLength;
+
+        Content(byte[] bytes, int length) {
+            mBytes = bytes;
+            mLength = length;
+        }
+    }
+
+    /**
+     * Splits the buffer line by line into field offsets, without copying.
+     */
+    private static final class LineReader {
+
+        private final byte[] mData;
+        private final int mLength;
+        private final byte mDelimiter;
+        private int mPosition;
+
+        private int[] mStarts = new int[32];
+        private int[] mEnds = new int[32];
+        private boolean[] mEscapedQuotes = new boolean[32];
+        private int mFieldCount;
+
+        LineReader(Content buffer, byte delimiter) {
+            mData = buffer.mBytes;
+            mLength = buffer.mLength;
+            mDelimiter = delimiter;
+        }
+
+        /**
+         * Moves to the next line and records its fields. Returns false at the end of the data.
+         */
+        boolean nextLine() {
+            if (mPosition >= mLength) {
+                return false;
+            }
+            mFieldCount = 0;
+            int i = mPosition;
+            while (true) {
+                int start;
+                int end;
+                boolean escapedQuotes = false;
+                if (i < mLength && mData[i] == '"') {
+                    // Quoted field, which may contain delimiters and doubled quotes
+                    start = ++i;
+                    while (i < mLength) {
+                        if (mData[i] == '"') {
+                            if (i + 1 < mLength && mData[i + 1] == '"') {
+                                escapedQuotes = true;
+                                i += 2;
+                                continue;
+                            }
+                            break;
+                        }
+                        i++;
+                    }
+                    end = i;
+                    while (i < mLength && !isFieldEnd(mData[i])) {
+                        i++;
+                    }
+                } else {
+                    start = i;
+                    while (i < mLength && !isFieldEnd(mData[i])) {
+                        i++;
+                    }
+                    end = i;
+                }
+                addField(start, end, escapedQuotes);
+
+                if (i < mLength && mData[i] == mDelimiter) {
+                    i++;
+                } else {
+                    break;
+                }
+            }
+            while (i < mLength && (mData[i] == '\r' || mData[i] == '\n')) {
+                i++;
+            }
+            mPosition = i;
+            return true;
+        }
+
+        private boolean isFieldEnd(byte b) {
+            return b == mDelimiter || b == '\n' || b == '\r';
+        }
+
+        private void addField(int start, int end, boolean escapedQuotes) {
+            if (mFieldCount == mStarts.length) {
+                int[] starts = new int[mStarts.length * 2];
+                int[] ends = new int[mStarts.length * 2];
+                boolean[] escaped = new boolean[mStarts.length * 2];
+                System.arraycopy(mStarts, 0, starts, 0, mFieldCount);
+                System.arraycopy(mEnds, 0, ends, 0, mFieldCount);
+                System.arraycopy(mEscapedQuotes, 0, escaped, 0, mFieldCount);
+                mStarts = starts;
+                mEnds = ends;
+                mEscapedQuotes = escaped;
+            }
+            mStarts[mFieldCount] = start;
+            mEnds[mFieldCount] = end;
+            mEscapedQuotes[mFieldCount] = escapedQuotes;
+            mFieldCount++;
+        }
+
+        boolean isEmpty(int field) {
+            return mStarts[field] == mEnds[field];
+        }
+
+        /**
+         * Compares a header field with a column name, ignoring a leading '#' and spaces.
+         */
+        boolean headerNameEquals(int field, String name) {
+            int start = mStarts[field];
+            int end = mEnds[field];
+            while (start < end && (mData[start] == '#' || mData[start] == ' ')) {
+                start++;
+            }
+            while (end > start && mData[end - 1] == ' ') {
+                end--;
+            }
+            if (end - start != name.length()) {
+                return false;
+            }
+            for (int i = 0; i < name.length(); i++) {
+                if (mData[start + i] != name.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        String string(int field) {
+            String value = new String(mData, mStarts[field], mEnds[field] - mStarts[field], UTF_8);
+            return mEscapedQuotes[field] ? value.replace("\"\"", "\"") : value;
+        }
+
+        /**
+         * Parses a decimal number such as "-12.345" or "1.2e-3" straight from the bytes.
+         */
+        double parseDouble(int field) {
+            int i = mStarts[field];
+            int end = mEnds[field];
+            if (i == end) {
+                throw new NumberFormatException("Empty number");
+            }
+
+            boolean negative = false;
+            if (mData[i] == '-' || mData[i] == '+') {
+                negative = mData[i] == '-';
+                i++;
+            }
+
+            long mantissa = 0;
+            int digits = 0;
+            int scale = 0;
+            boolean fraction = false;
+            for (; i < end; i++) {
+                byte b = mData[i];
+                if (b >= '0' && b <= '9') {
+                    if (digits < 18) {
+                        mantissa = mantissa * 10 + (b - '0');
+                        if (mantissa != 0) {
+                            digits++;
+                        }
+                        if (fraction) {
+                            scale++;
+                        }
+                    } else {
+                        return slowParseDouble(field);
+                    }
+                } else if (b == '.' && !fraction) {
+                    fraction = true;
+                } else {
+                    break;
+                }
+            }
+
+            int exponent = 0;
+            if (i < end && (mData[i] == 'e' || mData[i] == 'E')) {
+                i++;
+                boolean negativeExponent = false;
+                if (i < end && (mData[i] == '-' || mData[i] == '+')) {
+                    negativeExponent = mData[i] == '-';
+                    i++;
+                }
+                for (; i < end && mData[i] >= '0' && mData[i] <= '9'; i++) {
+                    exponent = exponent * 10 + (mData[i] - '0');
+                }
+                if (negativeExponent) {
+                    exponent = -exponent;
+                }
+            }
+            if (i != end) {
+                return slowParseDouble(field);
+            }
+
+            // Both operands are exact, so a single division or multiplication is correctly
+            // rounded and gives the same result as Double.parseDouble
+            int power = exponent - scale;
+            if (mantissa >= MAX_EXACT_MANTISSA || power < -22 || power > 22) {
+                return slowParseDouble(field);
+            }
+            double value = power < 0
+                    ? mantissa / POWERS_OF_TEN[-power]
+                    : mantissa * POWERS_OF_TEN[power];
+            return negative ? -value : value;
+        }
+
+        private double slowParseDouble(int field) {
+            return Double.parseDouble(string(field).trim());
+        }
+
+        /**
+         * Parses an ISO 8601 UTC time such as "2016-01-31T15:04:05.123Z" to epoch milliseconds.
+         */
+        long parseTime(int field) {
+            int i = mStarts[field];
+            int end = mEnds[field];
+            if (end - i < 19 || mData[i + 4] != '-' || mData[i + 7] != '-'
+                    || (mData[i + 10] != 'T' && mData[i + 10] != ' ')
+                    || mData[i + 13] != ':' || mData[i + 16] != ':') {
+                throw new NumberFormatException("Unexpected time " + string(field));
+            }
+            int year = digits(i, 4);
+            int month = digits(i + 5, 2);
+            int day = digits(i + 8, 2);
+            int hour = digits(i + 11, 2);
+            int minute = digits(i + 14, 2);
+            int second = digits(i + 17, 2);
+
+            int millis = 0;
+            i += 19;
+            if (i < end && mData[i] == '.') {
+                i++;
+                int multiplier = 100;
+                for (; i < end && mData[i] >= '0' && mData[i] <= '9'; i++) {
+                    millis += (mData[i] - '0') * multiplier;
+                    multiplier /= 10;
+                }
+            }
+
+            return daysFromCivil(year, month, day) * MILLIS_PER_DAY
+                    + ((hour * 60L + minute) * 60L + second) * 1000L + millis;
+        }
+
+        private int digits(int start, int count) {
+            int value = 0;
+            for (int i = start; i < start + count; i++) {
+                byte b = mData[i];
+                if (b < '0' || b > '9') {
+                    throw new NumberFormatException("Unexpected digit " + (char) b);
+                }
+                value = value * 10 + (b - '0');
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Returns the number of days between 1970-01-01 and the given date of the proleptic
+     * Gregorian calendar.
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        year -= month <= 2 ? 1 : 0;
+        long era = (year >= 0 ? year : year - 399) / 400;
+        long yearOfEra = year - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.android.quakereport;
+
+import android.os.Process;
+import android.util.Log;
+
+import androidx.collection.LruCache;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads and caches {@link EarthquakeDetail}s. While the user idles on the list, the details of
+ * the visible rows are prefetched on a low priority thread, so opening an event is instant;
+ * prefetches of rows that scrolled off are cancelled.
+ */
+public final class DetailPrefetcher {
+
+    /**
+     * Tag for log messages
+     */
+    private static final String LOG_TAG = DetailPrefetcher.class.getSimpleName();
+
+    /**
+     * Number of details kept in memory
+     */
+    private static final int CACHE_SIZE = 100;
+
+    /**
+     * Prefix of the page URL of USGS events; the detail service only knows those
+     */
+    private static final String USGS_EVENT_PAGE_URL = "https://earthquake.usgs.gov/earthquakes/eventpage/";
+
+    private static DetailPrefetcher sInstance;
+
+    private final LruCache<String, EarthquakeDetail> mCache = new LruCache<>(CACHE_SIZE);
+
+    /**
+     * Prefetches queued or running, by event id
+     */
+    private final ConcurrentMap<String, Future<EarthquakeDetail>> mPrefetches = new ConcurrentHashMap<>();
+
+    /**
+     * A single background priority thread, so prefetching never competes with the UI
+     */
+    private final ThreadPoolExecutor mExecutor = new ThreadPoolExecutor(1, 1,
+            30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND
+                            + Process.THREAD_PRIORITY_LESS_FAVORABLE);
+                    runnable.run();
+                }
+            }, "DetailPrefetcher");
+        }
+    });
+
+    private DetailPrefetcher() {
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    public static synchronized DetailPrefetcher getInstance() {
+        if (sInstance == null) {
+            sInstance = new DetailPrefetcher();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns true if the event, given by its page URL, has a USGS detail to load. Events
+     * from the other FDSN agencies do not.
+     */
+    public static boolean hasDetail(String eventUrl) {
+        return eventUrl != null && eventUrl.startsWith(USGS_EVENT_PAGE_URL);
+    }
+
+    /**
+     * Returns the detail if it is already loaded, or null.
+     */
+    public EarthquakeDetail getCached(String eventId) {
+        return mCache.get(eventId);
+    }
+
+    /**
+     * Returns the detail of the event, waiting for its prefetch if one is running, or
+     * fetching it otherwise. This is on a background thread.
+     */
+    public EarthquakeDetail load(String eventId) {
+        EarthquakeDetail detail = mCache.get(eventId);
+        if (detail != null) {
+            return detail;
+        }
+
+        Future<EarthquakeDetail> prefetch = mPrefetches.get(eventId);
+        if (prefetch != null) {
+            try {
+                detail = prefetch.get();
+                if (detail != null) {
+                    return detail;
+                }
+                Log.i(LOG_TAG, "TEST: prefetch of " + eventId + " failed, fetching it again");
+            } catch (CancellationException | ExecutionException e) {
+                Log.i(LOG_TAG, "TEST: prefetch of " + eventId + " did not complete, fetching it");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+        return fetch(eventId);
+    }
+
+    /**
+     * Prefetches the details of the given visible events, and cancels the prefetches of the
+     * events that are no longer visible.
+     */
+    public void prefetch(Collection<String> visibleIds) {
+        cancelAllExcept(visibleIds);
+        for (final String eventId : visibleIds) {
+            if (mCache.get(eventId) != null || mPrefetches.containsKey(eventId)) {
+                continue;
+            }
+            FutureTask<EarthquakeDetail> prefetch = new FutureTask<EarthquakeDetail>(new Callable<EarthquakeDetail>() {
+                @Override
+                public EarthquakeDetail call() {
+                    return fetch(eventId);
+                }
+            }) {
+                @Override
+                protected void done() {
+                    // Only this prefetch: a newer one for the same event may have replaced it
+                    mPrefetches.remove(eventId, this);
+                }
+            };
+            // Registered before it runs, so done() always finds it
+            if (mPrefetches.putIfAbsent(eventId, prefetch) == null) {
+                mExecutor.execute(prefetch);
+            }
+        }
+    }
+
+    /**
+     * Cancels the prefetches of every event that is not in the given collection.
+     */
+    public void cancelAllExcept(Collection<String> visibleIds) {
+        boolean cancelled = false;
+        for (Map.Entry<String, Future<EarthquakeDetail>> entry : mPrefetches.entrySet()) {
+            if (!visibleIds.contains(entry.getKey())) {
+                entry.getValue().cancel(true);
+                mPrefetches.remove(entry.getKey(), entry.getValue());
+                cancelled = true;
+            }
+        }
+        if (cancelled) {
+            // Drop the cancelled tasks still waiting in the queue
+            mExecutor.purge();
+        }
+    }
+
+    private EarthquakeDetail fetch(String eventId) {
+        EarthquakeDetail detail = QueryUtils.fetchEarthquakeDetail(eventId);
+        if (detail != null) {
+            mCache.put(eventId, detail);
+        }
+        return detail;
+    }
+}
@@ -20,6 +20,11 @@ package com.example.android.quakereport;
  */
 public class Earthquake {
 
+    /**
+     * USGS event id of the earthquake (i.e. "us7000abcd")
+     */
+    private String mId;
+
     /**
      * Magnitude of the earthquake
      */
@@ -40,21 +45,52 @@ public class Earthquake {
      */
     private String mUrl;
 
+    /**
+     * Latitude of the epicenter, in degrees
+     */
+    private double mLatitude;
+
+    /**
+     * Longitude of the epicenter, in degrees
+     */
+    private double mLongitude;
+
+    /**
+     * Depth of the hypocenter, in kilometers
+     */
+    private double mDepth;
+
 
     /**
      * Constructs a new {@link Earthquake} object.
      *
+     * @param id                 is the USGS event id of the earthquake
      * @param magnitude          is the magnitude (size) of the earthquake
      * @param location           is the location where the earthquake happened
      * @param timeInMilliseconds is the time in milliseconds (from the Epoch) when the
      *                           earthquake happened
      * @param url                is the website URL to find more details about the earthquake
+     * @param latitude           is the latitude of the epicenter, in degrees
+     * @param longitude          is the longitude of the epicenter, in degrees
+     * @param depth              is the depth of the hypocenter, in kilometers
      */
-    public Earthquake(double magnitude, String location, Long timeInMilliseconds, String url) {
+    public Earthquake(String id, double magnitude, String location, Long timeInMilliseconds, String url,
+                      double latitude, double longitude, double depth) {
+        mId = id;
         mMagnitude = magnitude;
         mLocation = location;
         mTimeInMilliseconds = timeInMilliseconds;
         mUrl = url;
+        mLatitude = latitude;
+        mLongitude = longitude;
+        mDepth = depth;
+    }
+
+    /**
+     * Returns the USGS event id of the earthquake.
+     */
+    public String getId() {
+        return mId;
     }
 
     /**
@@ -85,4 +121,25 @@ public class Earthquake {
         return mUrl;
     }
 
+    /**
+     * Returns the latitude of the epicenter, in degrees.
+     */
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    /**
+     * Returns the longitude of the epicenter, in degrees.
+     */
+    public double getLongitude() {
+        return mLongitude;
+    }
+
+    /**
+     * Returns the depth of the hypocenter, in kilometers.
+     */
+    public double getDepth() {
+        return mDepth;
+    }
+
 }
\ No newline at end of file
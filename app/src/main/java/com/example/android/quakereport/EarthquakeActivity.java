@@ -18,12 +18,12 @@ package com.example.android.quakereport;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
-import android.net.ConnectivityManager;
-import android.net.NetworkInfo;
 import android.net.Uri;
 import android.os.Bundle;
 
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.content.FileProvider;
 import androidx.loader.content.Loader;
 
 import android.preference.PreferenceManager;
@@ -31,16 +31,21 @@ import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
+import android.widget.AbsListView;
 import android.widget.AdapterView;
+import android.content.DialogInterface;
 import android.widget.Button;
 import android.widget.ListView;
+import android.widget.ProgressBar;
 import android.widget.TextView;
+import android.widget.Toast;
 
-
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
-public class EarthquakeActivity extends AppCompatActivity implements androidx.loader.app.LoaderManager.LoaderCallbacks<List<Earthquake>> {
+public class EarthquakeActivity extends AppCompatActivity implements androidx.loader.app.LoaderManager.LoaderCallbacks<List<Earthquake>>,
+        ConnectivityMonitor.Listener {
 
     public static final String LOG_TAG = EarthquakeActivity.class.getName();
 
@@ -50,6 +55,11 @@ public class EarthquakeActivity extends AppCompatActivity implements androidx.lo
      */
     private static final int EARTHQUAKE_LOADER_ID = 1;
 
+    /**
+     * Constant value for the loader of the pages after the first one.
+     */
+    private static final int PAGE_LOADER_ID = 2;
+
     /**
      * URL for earthquake data from the USGS dataset
      */
@@ -76,12 +86,107 @@ public class EarthquakeActivity extends AppCompatActivity implements androidx.lo
      */
     private Button retryButton;
 
+    /**
+     * Tracks the network and resumes a queued load when it comes back
+     */
+    private ConnectivityMonitor mConnectivityMonitor;
+
+    /**
+     * Records the frame times of the list while the activity is started
+     */
+    private JankMonitor mJankMonitor;
+
+    /**
+     * How long the list has to stay idle before the visible details are prefetched
+     */
+    private static final long PREFETCH_IDLE_DELAY_MILLIS = 500;
+
+    /**
+     * The next page is loaded when the list is scrolled this close to its end
+     */
+    private static final int LOAD_MORE_THRESHOLD = 5;
+
+    /**
+     * Results older than this are fetched again when the activity starts
+     */
+    private static final long STALE_AFTER_MILLIS = 5 * 60 * 1000;
+
+    /**
+     * Keys of the result kept in the saved instance state
+     */
+    private static final String STATE_QUERY_KEY = "query_key";
+    private static final String STATE_RESULT = "result";
+
+    /**
+     * Larger results are not saved in the instance state, which shares a 1 MB transaction
+     * buffer; they are restored from the disk cache by the loader instead
+     */
+    private static final int MAX_SAVED_RESULT_BYTES = 256 * 1024;
+
+    /**
+     * Result restored from the saved instance state after process death, until the loader
+     * takes it
+     */
+    private EarthquakeCache.Entry mRestoredResult;
+    private String mRestoredQueryKey;
+
+    /**
+     * ListView of earthquakes
+     */
+    private ListView mEarthquakeListView;
+
+    /**
+     * Visible range of the list the last time it was scrolled
+     */
+    private int mFirstVisibleItem = -1;
+    private int mVisibleItemCount;
+
+    /**
+     * First page of earthquakes currently shown, that further pages are appended to, or null
+     */
+    private List<Earthquake> mFirstPage;
+
+    /**
+     * Fast scroll index of the earthquakes currently shown
+     */
+    private DateSectionIndex mSectionIndex;
+
+    /**
+     * Id of the event last opened from the list, whose prefetch the detail screen may be
+     * waiting on, or null
+     */
+    private String mOpenedEventId;
+
+    /**
+     * Prefetches the details of the rows currently on screen
+     */
+    private final Runnable mPrefetchVisibleDetails = new Runnable() {
+        @Override
+        public void run() {
+            DetailPrefetcher.getInstance().prefetch(visibleEventIds());
+        }
+    };
+
+    /**
+     * Running export of the local store, or null
+     */
+    private ExportTask mExportTask;
+
+    /**
+     * Dialog showing the progress of {@link #mExportTask}
+     */
+    private AlertDialog mExportDialog;
+    private ProgressBar mExportProgressBar;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
 
         Log.i(LOG_TAG, "TEST: Earthquake Activity onCreate() called ");
 
         super.onCreate(savedInstanceState);
+        if (BuildConfig.DEBUG) {
+            JankMonitor.installMainThreadWatchdog();
+        }
         setContentView(R.layout.earthquake_activity);
 
         //Look up the Retry button
@@ -92,6 +197,7 @@ public class EarthquakeActivity extends AppCompatActivity implements androidx.lo
 
         // Find a reference to the {@link ListView} in the layout
         ListView earthquakeListView = (ListView) findViewById(R.id.list);
+        mEarthquakeListView = earthquakeListView;
 
         //hook up the TextView as the empty view of the ListView
         mEmptyStateTextView = (TextView) findViewById(R.id.empty_view);
@@ -99,11 +205,30 @@ public class EarthquakeActivity extends AppCompatActivity implements androidx.lo
 
         // Create a new adapter that takes an empty list of earthquakes as input
         mAdapter = new EarthquakeAdapter(this, new ArrayList<Earthquake>());
+        mJankMonitor = new JankMonitor(this);
+        mAdapter.setJankMonitor(mJankMonitor);
 
         // Set the adapter on the {@link ListView}
         // so the list can be populated in the user interface
         earthquakeListView.setAdapter(mAdapter);
 
+        // Jump through long lists by day or hour, using the adapter's date sections
+        earthquakeListView.setFastScrollEnabled(true);
+
+        mConnectivityMonitor = new ConnectivityMonitor(this, this);
+
+        if (savedInstanceState != null && savedInstanceState.containsKey(STATE_RESULT)) {
+            mRestoredQueryKey = savedInstanceState.getString(STATE_QUERY_KEY);
+            mRestoredResult = EarthquakeCache.Entry.fromByteArray(savedInstanceState.getByteArray(STATE_RESULT));
+        }
+
+        // Take over an export started before a configuration change
+        @SuppressWarnings("deprecation")
+        ExportTask exportTask = (ExportTask) getLastCustomNonConfigurationInstance();
+        if (exportTask != null) {
+            attachExport(exportTask);
+        }
+
         //Checks Internet Connection and Starts the Loader
         startLoader();
 
@@ -125,33 +250,98 @@ public class EarthquakeActivity extends AppCompatActivity implements androidx.lo
         });
 
 
-        // Set an item click listener on the ListView, which sends an intent to a web browser
-        // to open a website with more information about the selected earthquake.
+        // Set an item click listener on the ListView, which opens the detail screen
+        // with more information about the selected earthquake.
         earthquakeListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
             @Override
             public void onItemClick(AdapterView<?> adapterView, View view, int position, long l) {
                 // Find the current earthquake that was clicked on
                 Earthquake currentEarthquake = mAdapter.getItem(position);
+                mOpenedEventId = currentEarthquake.getId();
 
-                // Convert the String URL into a URI object (to pass into the Intent constructor)
-                Uri earthquakeUri = Uri.parse(currentEarthquake.getUrl());
+                // Send the intent to launch the detail activity
+                startActivity(EarthquakeDetailActivity.newIntent(EarthquakeActivity.this, currentEarthquake));
+            }
+        });
 
-                // Create a new intent to view the earthquake URI
-                Intent websiteIntent = new Intent(Intent.ACTION_VIEW, earthquakeUri);
+        // Prefetch the details of the visible rows while the list is idle, and cancel the
+        // prefetches of the rows that scroll off
+        earthquakeListView.setOnScrollListener(new AbsListView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(AbsListView listView, int scrollState) {
+                listView.removeCallbacks(mPrefetchVisibleDetails);
+                if (scrollState == SCROLL_STATE_IDLE) {
+                    listView.postDelayed(mPrefetchVisibleDetails, PREFETCH_IDLE_DELAY_MILLIS);
+                }
+            }
 
-                // Send the intent to launch a new activity
-                startActivity(websiteIntent);
+            @Override
+            public void onScroll(AbsListView listView, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+                if (firstVisibleItem != mFirstVisibleItem || visibleItemCount != mVisibleItemCount) {
+                    mFirstVisibleItem = firstVisibleItem;
+                    mVisibleItemCount = visibleItemCount;
+                    DetailPrefetcher.getInstance().cancelAllExcept(visibleEventIds());
+                    if (totalItemCount > 0
+                            && firstVisibleItem + visibleItemCount >= totalItemCount - LOAD_MORE_THRESHOLD) {
+                        loadNextPage();
+                    }
+                }
             }
         });
 
 
     }
 
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        Loader<List<Earthquake>> loader = androidx.loader.app.LoaderManager.getInstance(this)
+                .getLoader(EARTHQUAKE_LOADER_ID);
+        if (loader == null) {
+            return;
+        }
+        EarthquakeLoader earthquakeLoader = (EarthquakeLoader) loader;
+        EarthquakeCache.Entry result = earthquakeLoader.getDeliveredResult();
+        if (result == null) {
+            return;
+        }
+        byte[] bytes = result.toByteArray();
+        if (bytes.length <= MAX_SAVED_RESULT_BYTES) {
+            outState.putString(STATE_QUERY_KEY, EarthquakeCache.keyFor(earthquakeLoader.getUrl()));
+            outState.putByteArray(STATE_RESULT, bytes);
+        }
+    }
+
     @Override
     public Loader<List<Earthquake>> onCreateLoader(int i, Bundle bundle) {
         // Create a new loader for the given URL
         Log.i(LOG_TAG, "TEST: onCreateLoader() called...");
+        if (i == PAGE_LOADER_ID) {
+            return new EarthquakePageLoader(this, buildQueryUrl(), getPageSize(), mFirstPage);
+        }
+        return new EarthquakeLoader(this, buildQueryUrl());
+    }
 
+    /**
+     * Returns the number of earthquakes per page from the settings.
+     */
+    private int getPageSize() {
+        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(this);
+        String pageSize = sharedPrefs.getString(
+                getString(R.string.settings_page_size_key),
+                getString(R.string.settings_page_size_default));
+        try {
+            return Math.max(1, Integer.parseInt(pageSize));
+        } catch (NumberFormatException e) {
+            Log.e(LOG_TAG, "Problem parsing the page size " + pageSize, e);
+            return Integer.parseInt(getString(R.string.settings_page_size_default));
+        }
+    }
+
+    /**
+     * Returns the query URL for the current settings and network.
+     */
+    private String buildQueryUrl() {
         SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(this);
         String minMagnitude = sharedPrefs.getString(
                 getString(R.string.settings_min_magnitude_key),
@@ -165,17 +355,25 @@ public class EarthquakeActivity extends AppCompatActivity implements androidx.lo
         Uri baseUri = Uri.parse(USGS_REQUEST_URL);
         Uri.Builder uriBuilder = baseUri.buildUpon();
 
-        uriBuilder.appendQueryParameter("format", "geojson");
-        uriBuilder.appendQueryParameter("limit", "10");
-        uriBuilder.appendQueryParameter("minmag", minMagnitude);
+        // On a metered link ask for the much smaller CSV format, it decodes to the same
+        // earthquakes as GeoJSON
+        String format = mConnectivityMonitor.getFetchStrategy() == ConnectivityMonitor.FetchStrategy.DELTA
+                ? DelimitedTextDecoder.csv().getFormat()
+                : new GeoJsonDecoder().getFormat();
+        uriBuilder.appendQueryParameter("format", format);
+        uriBuilder.appendQueryParameter("limit", String.valueOf(getPageSize()));
+        uriBuilder.appendQueryParameter("minmagnitude", minMagnitude);
         uriBuilder.appendQueryParameter("orderby", orderBy);
 
-        return new EarthquakeLoader(this, uriBuilder.toString());
-
+        return uriBuilder.toString();
     }
 
     @Override
     public void onLoadFinished(Loader<List<Earthquake>> loader, List<Earthquake> earthquakes) {
+        if (loader.getId() == PAGE_LOADER_ID) {
+            onPagesLoaded((EarthquakePageLoader) loader, earthquakes);
+            return;
+        }
 
         Log.i(LOG_TAG, "TEST: onLoadFinished() called...");
         // Hide loading indicator because the data has been loaded
@@ -187,43 +385,234 @@ public class EarthquakeActivity extends AppCompatActivity implements androidx.lo
 
         // Clear the adapter of previous earthquake data
         mAdapter.clear();
+        mFirstPage = null;
+        mSectionIndex = null;
+
+        // The pages loaded after the previous first page no longer follow this one; the same
+        // first page is delivered again after a configuration change or a failed refresh, and
+        // keeps its pages
+        androidx.loader.app.LoaderManager loaderManager = androidx.loader.app.LoaderManager.getInstance(this);
+        EarthquakePageLoader pageLoader = (EarthquakePageLoader) loaderManager.getLoader(PAGE_LOADER_ID);
+        if (pageLoader != null && pageLoader.getFirstPage() != earthquakes) {
+            loaderManager.destroyLoader(PAGE_LOADER_ID);
+            pageLoader = null;
+        }
 
         //If the list of earthquakes is empty and there is no Internet Connection, update and
-        //show it in the emptyTextView
-        if (earthquakes == null && !QueryUtils.isNetworkActive(this)){
-            mEmptyStateTextView.setText("No Internet connection");
+        //show it in the emptyTextView, and resume the load once the network is back
+        if (earthquakes == null && !mConnectivityMonitor.isConnected()){
+            mEmptyStateTextView.setText(R.string.no_internet_connection);
+            retryButton.setVisibility(View.VISIBLE);
+            mConnectivityMonitor.queuePendingLoad();
         }
 
         // If there is a valid list of {@link Earthquake}s, then add them to the adapter's
         // data set. This will trigger the ListView to update.
         if (earthquakes != null && !earthquakes.isEmpty()) {
+            mFirstPage = earthquakes;
+            mSectionIndex = ((EarthquakeLoader) loader).getSectionIndex(earthquakes);
+            mAdapter.setSectionIndex(mSectionIndex);
             mAdapter.addAll(earthquakes);
+            // The fast scroller reads the sections only once, so recreate it for the new ones
+            mEarthquakeListView.setFastScrollEnabled(false);
+            mEarthquakeListView.setFastScrollEnabled(true);
+            if (pageLoader != null) {
+                onPagesLoaded(pageLoader, pageLoader.getPages());
+            }
+            mEarthquakeListView.removeCallbacks(mPrefetchVisibleDetails);
+            mEarthquakeListView.postDelayed(mPrefetchVisibleDetails, PREFETCH_IDLE_DELAY_MILLIS);
+        }
+    }
+
+    /**
+     * Appends the pages loaded since they were last shown to the list and its fast scroll index.
+     */
+    private void onPagesLoaded(EarthquakePageLoader loader, List<Earthquake> pages) {
+        Log.i(LOG_TAG, "TEST: onPagesLoaded() called...");
+        if (pages == null || loader.getFirstPage() != mFirstPage) {
+            return;
+        }
+        int firstPageSize = mFirstPage.size();
+
+        // After a configuration change the list shows the first page again, while the index,
+        // kept by the loader, may already cover the pages
+        int shownPages = mAdapter.getCount() - firstPageSize;
+        if (shownPages < pages.size()) {
+            mAdapter.addAll(pages.subList(shownPages, pages.size()));
+        }
+        int indexedPages = mSectionIndex.getItemCount() - firstPageSize;
+        if (indexedPages < pages.size()) {
+            mSectionIndex.append(pages.subList(indexedPages, pages.size()));
+            // The fast scroller reads the sections only once, so recreate it for the new ones
+            mEarthquakeListView.setFastScrollEnabled(false);
+            mEarthquakeListView.setFastScrollEnabled(true);
+        }
+    }
+
+    /**
+     * Loads the next page of the query when the list is scrolled to its end, if there is one.
+     */
+    private void loadNextPage() {
+        if (mFirstPage == null || !mConnectivityMonitor.isConnected()) {
+            return;
         }
+        androidx.loader.app.LoaderManager loaderManager = androidx.loader.app.LoaderManager.getInstance(this);
+        EarthquakePageLoader pageLoader = (EarthquakePageLoader) loaderManager.initLoader(PAGE_LOADER_ID, null, this);
+        if (pageLoader.isLoading() || !pageLoader.hasMore()) {
+            return;
+        }
+        Log.i(LOG_TAG, "TEST: The list reached its end, loading the next page...");
+        pageLoader.forceLoad();
+    }
+
+    /**
+     * Returns the ids of the earthquakes currently on screen that have a detail to prefetch.
+     */
+    private List<String> visibleEventIds() {
+        List<String> ids = new ArrayList<>();
+        int first = mEarthquakeListView.getFirstVisiblePosition();
+        int last = Math.min(mEarthquakeListView.getLastVisiblePosition(), mAdapter.getCount() - 1);
+        for (int position = Math.max(first, 0); position <= last; position++) {
+            Earthquake earthquake = mAdapter.getItem(position);
+            if (DetailPrefetcher.hasDetail(earthquake.getUrl())) {
+                ids.add(earthquake.getId());
+            }
+        }
+        return ids;
     }
 
     @Override
     public void onLoaderReset(Loader<List<Earthquake>> loader) {
         Log.i(LOG_TAG, "TEST: onLoaderReset() called...");
+        if (loader.getId() == PAGE_LOADER_ID) {
+            // Destroyed because a new first page replaced the list
+            return;
+        }
         // Loader reset, so we can clear out our existing data.
+        mAdapter.setSectionIndex(null);
         mAdapter.clear();
     }
 
     private void startLoader() {
         Log.i(LOG_TAG, "TEST:  startLoader() called...");
 
-        // If network active start fetching data
-        if (QueryUtils.isNetworkActive(this)) {
-            Log.i(LOG_TAG, "TEST: There is Internet connection, calling initloader()...");
-            loadingIndicator.setVisibility(View.VISIBLE);
-            androidx.loader.app.LoaderManager.getInstance(this).initLoader(EARTHQUAKE_LOADER_ID, null, this).forceLoad();
+        androidx.loader.app.LoaderManager loaderManager = androidx.loader.app.LoaderManager.getInstance(this);
+        String queryKey = EarthquakeCache.keyFor(buildQueryUrl());
+
+        // A loader retained across a configuration change delivers its result again, unless
+        // the query changed in the meantime
+        Loader<List<Earthquake>> existingLoader = loaderManager.getLoader(EARTHQUAKE_LOADER_ID);
+        EarthquakeLoader loader;
+        if (existingLoader != null
+                && !EarthquakeCache.keyFor(((EarthquakeLoader) existingLoader).getUrl()).equals(queryKey)) {
+            Log.i(LOG_TAG, "TEST: The query changed, calling restartLoader()...");
+            loader = (EarthquakeLoader) loaderManager.restartLoader(EARTHQUAKE_LOADER_ID, null, this);
         } else {
-            Log.i(LOG_TAG, "TEST: No Internet connection...");
-            mEmptyStateTextView.setText("No internet connection");
+            loader = (EarthquakeLoader) loaderManager.initLoader(EARTHQUAKE_LOADER_ID, null, this);
+        }
+        if (loaderManager.getLoader(PAGE_LOADER_ID) != null) {
+            // Pages retained across a configuration change are delivered after the first one
+            loaderManager.initLoader(PAGE_LOADER_ID, null, this);
+        }
+
+        // A new loader shows the result saved before process death, or the one still in
+        // memory from a previous instance of the activity, right away
+        if (loader.getDeliveredResult() == null) {
+            EarthquakeCache.Entry result = queryKey.equals(mRestoredQueryKey) ? mRestoredResult : null;
+            if (result == null) {
+                result = EarthquakeCache.getInstance(this).peek(queryKey);
+            }
+            if (result != null) {
+                loader.deliverRestoredResult(result);
+            }
+        }
+        mRestoredResult = null;
+        mRestoredQueryKey = null;
+
+        if (!loader.isStale(STALE_AFTER_MILLIS)) {
+            Log.i(LOG_TAG, "TEST: The results are recent, not fetching them again");
+            return;
+        }
+        if (loader.isLoading()) {
+            // e.g. a rotation during the first load: the retained loader delivers when done
+            Log.i(LOG_TAG, "TEST: A load is already running, waiting for it...");
+            return;
+        }
+
+        // If network active start fetching data
+        ConnectivityMonitor.FetchStrategy fetchStrategy = mConnectivityMonitor.getFetchStrategy();
+        if (fetchStrategy != ConnectivityMonitor.FetchStrategy.NONE) {
+            Log.i(LOG_TAG, "TEST: There is Internet connection, calling forceLoad()...");
+            if (loader.getDeliveredResult() == null) {
+                loadingIndicator.setVisibility(View.VISIBLE);
+            }
+            loader.setFetchStrategy(fetchStrategy);
+            loader.forceLoad();
+        } else if (loader.getDeliveredResult() == null) {
+            Log.i(LOG_TAG, "TEST: No Internet connection, waiting for the network...");
+            mEmptyStateTextView.setText(R.string.no_internet_connection);
             retryButton.setVisibility(View.VISIBLE);
             loadingIndicator.setVisibility(View.GONE);
+            mConnectivityMonitor.queuePendingLoad();
+        } else {
+            Log.i(LOG_TAG, "TEST: No Internet connection, refreshing once the network is back...");
+            mConnectivityMonitor.queuePendingLoad();
         }
     }
 
+    @Override
+    public void onNetworkAvailable(ConnectivityMonitor.FetchStrategy strategy) {
+        Log.i(LOG_TAG, "TEST: Network is back, resuming the pending load...");
+        mEmptyStateTextView.setText("");
+        retryButton.setVisibility(View.GONE);
+        startLoader();
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        mConnectivityMonitor.register();
+        mJankMonitor.start();
+    }
+
+    @Override
+    protected void onStop() {
+        mJankMonitor.stop();
+        mConnectivityMonitor.unregister();
+        mEarthquakeListView.removeCallbacks(mPrefetchVisibleDetails);
+        // Keep the prefetch of the event being opened, the detail screen waits for it
+        List<String> keptIds = new ArrayList<>();
+        if (mOpenedEventId != null) {
+            keptIds.add(mOpenedEventId);
+            mOpenedEventId = null;
+        }
+        DetailPrefetcher.getInstance().cancelAllExcept(keptIds);
+        super.onStop();
+    }
+
+    /**
+     * Keeps a running export across a configuration change.
+     */
+    @Override
+    @SuppressWarnings("deprecation")
+    public Object onRetainCustomNonConfigurationInstance() {
+        return mExportTask;
+    }
+
+    @Override
+    protected void onDestroy() {
+        if (mExportTask != null) {
+            if (isChangingConfigurations()) {
+                // Handed over to the next instance through onRetainCustomNonConfigurationInstance()
+                mExportTask.setListener(null);
+            } else {
+                mExportTask.cancel(false);
+            }
+        }
+        dismissExportDialog();
+        super.onDestroy();
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.main, menu);
@@ -237,10 +626,101 @@ public class EarthquakeActivity extends AppCompatActivity implements androidx.lo
             Intent settingsIntent = new Intent(this, SettingsActivity.class);
             startActivity(settingsIntent);
             return true;
+        } else if (id == R.id.action_timeline) {
+            startActivity(new Intent(this, TimelineActivity.class));
+            return true;
+        } else if (id == R.id.action_export_csv) {
+            startExport(EarthquakeExporter.Format.CSV);
+            return true;
+        } else if (id == R.id.action_export_geojson) {
+            startExport(EarthquakeExporter.Format.GEOJSON);
+            return true;
         }
         return super.onOptionsItemSelected(item);
     }
 
+    /**
+     * Streams the local store to a file in the background with a cancellable progress
+     * dialog, then offers to share the file.
+     */
+    private void startExport(EarthquakeExporter.Format format) {
+        if (mExportTask != null) {
+            return;
+        }
+        ExportTask exportTask = new ExportTask(this, format);
+        attachExport(exportTask);
+        exportTask.execute();
+    }
+
+    /**
+     * Shows the progress of the export and handles its result. Also used to take over a
+     * running export after a configuration change.
+     */
+    private void attachExport(final ExportTask exportTask) {
+        mExportTask = exportTask;
+
+        mExportProgressBar = new ProgressBar(this, null, android.R.attr.progressBarStyleHorizontal);
+        mExportProgressBar.setIndeterminate(true);
+        int padding = (int) (24 * getResources().getDisplayMetrics().density);
+        mExportProgressBar.setPadding(padding, padding, padding, 0);
+        mExportDialog = new AlertDialog.Builder(this)
+                .setTitle(R.string.export_title)
+                .setMessage(getString(R.string.export_progress, 0, 0))
+                .setView(mExportProgressBar)
+                .setCancelable(false)
+                .setNegativeButton(R.string.export_cancel, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        exportTask.cancel(false);
+                    }
+                })
+                .show();
+
+        exportTask.setListener(new ExportTask.Listener() {
+            @Override
+            public void onExportProgress(int exported, int total) {
+                if (mExportProgressBar != null) {
+                    mExportProgressBar.setIndeterminate(false);
+                    mExportProgressBar.setMax(Math.max(1, total));
+                    mExportProgressBar.setProgress(exported);
+                    mExportDialog.setMessage(getString(R.string.export_progress, exported, total));
+                }
+            }
+
+            @Override
+            public void onExportFinished(File file) {
+                mExportTask = null;
+                dismissExportDialog();
+                if (file == null) {
+                    Toast.makeText(EarthquakeActivity.this, R.string.export_failed, Toast.LENGTH_SHORT).show();
+                    return;
+                }
+                Uri uri = FileProvider.getUriForFile(EarthquakeActivity.this,
+                        getPackageName() + ".fileprovider", file);
+                Intent shareIntent = new Intent(Intent.ACTION_SEND);
+                shareIntent.setType(exportTask.getFormat().getMimeType());
+                shareIntent.putExtra(Intent.EXTRA_STREAM, uri);
+                shareIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+                startActivity(Intent.createChooser(shareIntent, getString(R.string.export_share_title)));
+            }
+
+            @Override
+            public void onExportCancelled() {
+                mExportTask = null;
+                dismissExportDialog();
+                Toast.makeText(EarthquakeActivity.this, R.string.export_cancelled, Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
+    private void dismissExportDialog() {
+        if (mExportDialog != null) {
+            mExportDialog.dismiss();
+            mExportDialog = null;
+            mExportProgressBar = null;
+        }
+    }
+
 }
 
 
@@ -25,6 +25,7 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ArrayAdapter;
+import android.widget.SectionIndexer;
 import android.widget.TextView;
 
 import java.text.DecimalFormat;
@@ -39,7 +40,7 @@ import java.util.List;
  * These list item layouts will be provided to an adapter view like ListView
  * to be displayed to the user.
  */
-public class EarthquakeAdapter extends ArrayAdapter<Earthquake> {
+public class EarthquakeAdapter extends ArrayAdapter<Earthquake> implements SectionIndexer {
 
 
     /**
@@ -48,6 +49,16 @@ public class EarthquakeAdapter extends ArrayAdapter<Earthquake> {
      */
     private static final String LOCATION_SEPARATOR = " of ";
 
+    /**
+     * Receives the time spent binding each row, or null
+     */
+    private JankMonitor mJankMonitor;
+
+    /**
+     * Date sections of the earthquakes, for the fast scroller, or null
+     */
+    private DateSectionIndex mSectionIndex;
+
     /**
      * Construct a new {@link EarthquakeAdapter}.
      *
@@ -59,12 +70,42 @@ public class EarthquakeAdapter extends ArrayAdapter<Earthquake> {
         super(context, 0, earthquakes);
     }
 
+    /**
+     * Reports the time spent binding each row to the given monitor.
+     */
+    public void setJankMonitor(JankMonitor jankMonitor) {
+        mJankMonitor = jankMonitor;
+    }
+
+    /**
+     * Sets the date sections of the earthquakes about to be shown.
+     */
+    public void setSectionIndex(DateSectionIndex sectionIndex) {
+        mSectionIndex = sectionIndex;
+    }
+
+    @Override
+    public Object[] getSections() {
+        return mSectionIndex == null ? new Object[0] : mSectionIndex.getSections();
+    }
+
+    @Override
+    public int getPositionForSection(int sectionIndex) {
+        return mSectionIndex == null ? 0 : mSectionIndex.getPositionForSection(sectionIndex);
+    }
+
+    @Override
+    public int getSectionForPosition(int position) {
+        return mSectionIndex == null ? 0 : mSectionIndex.getSectionForPosition(position);
+    }
+
     /**
      * @return a list view the display the information about the earthquake at the given
      * position in the list of earthquakes .
      */
     @Override
     public View getView(int position, View convertView, ViewGroup parent) {
+        long bindStart = System.nanoTime();
         // check if there is an existing list item (called convertView) that we can use,
         // otherwise if convertView is null, then inflate a new list item layout .
         View listItemView = convertView;
@@ -151,6 +192,10 @@ public class EarthquakeAdapter extends ArrayAdapter<Earthquake> {
         // Display the time of the current earthquake in that TextView
         timeView.setText(formattedTime);
 
+        if (mJankMonitor != null) {
+            mJankMonitor.recordBind(System.nanoTime() - bindStart);
+        }
+
         // Returns the listItemView that is now showing the appropriate data.
         return listItemView;
     }
@@ -0,0 +1,224 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.preference.PreferenceManager;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Fetches the same query from several {@link EarthquakeSource}s concurrently and merges the
+ * results, so an event reported by several agencies only shows up once.
+ */
+public final class EarthquakeAggregator {
+
+    /**
+     * Tag for the log messages
+     */
+    private static final String LOG_TAG = EarthquakeAggregator.class.getSimpleName();
+
+    /**
+     * URL of the USGS event web service, always the first (preferred) source
+     */
+    private static final String USGS_REQUEST_URL = "https://earthquake.usgs.gov/fdsnws/event/1/query";
+
+    /**
+     * How long to wait for all the sources, in seconds
+     */
+    private static final long FETCH_TIMEOUT_SECONDS = 30;
+
+    /**
+     * Maximum difference between the origin times of two reports of the same event
+     */
+    static final long DUPLICATE_WINDOW_MILLIS = 30 * 1000;
+
+    /**
+     * Maximum distance between the epicenters of two reports of the same event
+     */
+    static final double DUPLICATE_DISTANCE_KM = 100;
+
+    /**
+     * Create a private constructor because no one should ever create a {@link EarthquakeAggregator} object.
+     */
+    private EarthquakeAggregator() {
+    }
+
+    /**
+     * Returns USGS followed by the additional FDSN services entered in the settings,
+     * in order of preference.
+     */
+    public static List<EarthquakeSource> sourcesFor(Context context) {
+        List<EarthquakeSource> sources = new ArrayList<>();
+        sources.add(new EarthquakeSource("USGS", USGS_REQUEST_URL, null));
+
+        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String extraSources = sharedPrefs.getString(
+                context.getString(R.string.settings_extra_sources_key),
+                context.getString(R.string.settings_extra_sources_default));
+        if (!TextUtils.isEmpty(extraSources)) {
+            // Each entry is a query URL, optionally followed by "|" and an event page URL template
+            for (String entry : extraSources.split("[,\\s]+")) {
+                if (!TextUtils.isEmpty(entry)) {
+                    int separator = entry.indexOf('|');
+                    String url = separator >= 0 ? entry.substring(0, separator) : entry;
+                    String eventPageUrlTemplate = separator >= 0 ? entry.substring(separator + 1) : null;
+                    String name = Uri.parse(url).getHost();
+                    sources.add(EarthquakeSource.fdsn(name != null ? name : url, url,
+                            TextUtils.isEmpty(eventPageUrlTemplate) ? null : eventPageUrlTemplate));
+                }
+            }
+        }
+        return sources;
+    }
+
+    /**
+     * Sends the query to every source concurrently and returns the merged, deduplicated
+     * earthquakes in the order and limit of the query, or null if no source answered.
+     * This is on a background thread.
+     */
+    public static List<Earthquake> fetchEarthquakeData(List<EarthquakeSource> sources, final String requestUrl) {
+        if (sources.size() == 1) {
+            return sources.get(0).fetchEarthquakeData(requestUrl);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(sources.size());
+        List<Future<List<Earthquake>>> futures = new ArrayList<>();
+        try {
+            for (final EarthquakeSource source : sources) {
+                futures.add(executor.submit(new Callable<List<Earthquake>>() {
+                    @Override
+                    public List<Earthquake> call() {
+                        return source.fetchEarthquakeData(requestUrl);
+                    }
+                }));
+            }
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(FETCH_TIMEOUT_SECONDS);
+            List<List<Earthquake>> results = new ArrayList<>();
+            boolean answered = false;
+            for (int i = 0; i < futures.size(); i++) {
+                List<Earthquake> result = null;
+                try {
+                    result = futures.get(i).get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                } catch (ExecutionException | TimeoutException e) {
+                    Log.e(LOG_TAG, "Problem fetching from " + sources.get(i).getName(), e);
+                    futures.get(i).cancel(true);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+                answered |= result != null;
+                results.add(result != null ? result : new ArrayList<Earthquake>());
+            }
+            if (!answered) {
+                return null;
+            }
+            return QueryUtils.applyOrderAndLimit(mergeDuplicates(results), requestUrl);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Merges the earthquakes of several sources, given in order of preference. Two reports from
+     * different sources are the same event when their origin times are within
+     * {@link #DUPLICATE_WINDOW_MILLIS} and their epicenters within {@link #DUPLICATE_DISTANCE_KM};
+     * the report of the preferred source is kept.
+     * <p>
+     * All reports are sorted by time once, then each report is only compared with the kept
+     * events inside the sliding time window before it, so merging is O(n log n + n * w)
+     * instead of comparing all pairs.
+     */
+    static List<Earthquake> mergeDuplicates(List<List<Earthquake>> resultsBySource) {
+        List<Report> reports = new ArrayList<>();
+        for (int source = 0; source < resultsBySource.size(); source++) {
+            for (Earthquake earthquake : resultsBySource.get(source)) {
+                reports.add(new Report(earthquake, source));
+            }
+        }
+        Collections.sort(reports, new Comparator<Report>() {
+            @Override
+            public int compare(Report a, Report b) {
+                return a.mTime < b.mTime ? -1 : (a.mTime == b.mTime ? 0 : 1);
+            }
+        });
+
+        // Kept events, in time order; windowStart is the first one still inside the window
+        List<Report> kept = new ArrayList<>();
+        int windowStart = 0;
+        for (Report report : reports) {
+            while (windowStart < kept.size()
+                    && report.mTime - kept.get(windowStart).mTime > DUPLICATE_WINDOW_MILLIS) {
+                windowStart++;
+            }
+
+            Report duplicateOf = null;
+            for (int i = windowStart; i < kept.size(); i++) {
+                Report candidate = kept.get(i);
+                if (candidate.mSources.get(report.mSource)) {
+                    // Two reports from the same source are two different events
+                    continue;
+                }
+                if (AlertRule.distanceKm(candidate.mEarthquake.getLatitude(), candidate.mEarthquake.getLongitude(),
+                        report.mEarthquake.getLatitude(), report.mEarthquake.getLongitude()) <= DUPLICATE_DISTANCE_KM) {
+                    duplicateOf = candidate;
+                    break;
+                }
+            }
+
+            if (duplicateOf == null) {
+                kept.add(report);
+            } else {
+                duplicateOf.mSources.set(report.mSource);
+                if (report.mSource < duplicateOf.mSource) {
+                    duplicateOf.mEarthquake = report.mEarthquake;
+                    duplicateOf.mSource = report.mSource;
+                }
+            }
+        }
+
+        List<Earthquake> merged = new ArrayList<>(kept.size());
+        for (Report report : kept) {
+            merged.add(report.mEarthquake);
+        }
+        return merged;
+    }
+
+    /**
+     * An earthquake and the sources that reported it.
+     */
+    private static final class Report {
+
+        /**
+         * Time of the first report, which keeps the kept list sorted when a report is replaced
+         */
+        final long mTime;
+
+        Earthquake mEarthquake;
+
+        int mSource;
+
+        final BitSet mSources = new BitSet();
+
+        Report(Earthquake earthquake, int source) {
+            mTime = earthquake.getTimeInMilliseconds();
+            mEarthquake = earthquake;
+            mSource = source;
+            mSources.set(source);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.example.android.quakereport;
+
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.preference.PreferenceManager;
+import android.text.TextUtils;
+import android.util.Log;
+
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Builds the {@link AlertRule}s from the user preferences, runs each loaded batch of
+ * earthquakes through the {@link AlertRuleEngine} and posts a notification per alert.
+ */
+public final class EarthquakeAlerts {
+
+    /**
+     * Tag for log messages
+     */
+    private static final String LOG_TAG = EarthquakeAlerts.class.getSimpleName();
+
+    /**
+     * Notification channel for earthquake alerts
+     */
+    private static final String CHANNEL_ID = "earthquake_alerts";
+
+    /**
+     * Preference key where the already alerted (rule, event) pairs are persisted, oldest
+     * first, one per line
+     */
+    private static final String ALERTED_KEYS_PREFERENCE = "alert_alerted_key_list";
+
+    /**
+     * Preference key of the unordered string set the keys were persisted in before
+     */
+    private static final String LEGACY_ALERTED_KEYS_PREFERENCE = "alert_alerted_keys";
+
+    private static final String ALERTED_KEYS_SEPARATOR = "\n";
+
+    /**
+     * Id of the rule built from the "nearby" preferences
+     */
+    private static final String NEARBY_RULE_ID = "nearby";
+
+    /**
+     * Id of the rule built from the "worldwide" preference
+     */
+    private static final String WORLDWIDE_RULE_ID = "worldwide";
+
+    /**
+     * Only earthquakes that happened this recently are alerted about, so a first load or a
+     * new query does not notify about every matching event of the last month
+     */
+    private static final long MAX_ALERT_AGE_MILLIS = 60 * 60 * 1000;
+
+    private static EarthquakeAlerts sInstance;
+
+    private final Context mContext;
+
+    private final AlertRuleEngine mEngine;
+
+    private EarthquakeAlerts(Context context) {
+        mContext = context.getApplicationContext();
+        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mEngine = new AlertRuleEngine(new ArrayList<AlertRule>(), readAlertedKeys(sharedPrefs));
+    }
+
+    /**
+     * Returns the persisted alerted keys, oldest first, so the engine keeps evicting the
+     * oldest ones after a restart. A string set would lose that order.
+     */
+    private static Collection<String> readAlertedKeys(SharedPreferences sharedPrefs) {
+        String keys = sharedPrefs.getString(ALERTED_KEYS_PREFERENCE, null);
+        if (keys != null) {
+            return keys.isEmpty() ? Collections.<String>emptyList()
+                    : Arrays.asList(keys.split(ALERTED_KEYS_SEPARATOR));
+        }
+        // Saved by an older version, in no particular order
+        return sharedPrefs.getStringSet(LEGACY_ALERTED_KEYS_PREFERENCE, null);
+    }
+
+    public static synchronized EarthquakeAlerts getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new EarthquakeAlerts(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Evaluates a batch of loaded earthquakes, full or delta, and notifies the matching
+     * alerts about the recent ones. This is called on the loader background thread.
+     */
+    public void onEarthquakesLoaded(List<Earthquake> earthquakes) {
+        long cutoffMillis = System.currentTimeMillis() - MAX_ALERT_AGE_MILLIS;
+        List<Earthquake> recent = new ArrayList<>();
+        for (Earthquake earthquake : earthquakes) {
+            if (earthquake.getTimeInMilliseconds() >= cutoffMillis) {
+                recent.add(earthquake);
+            }
+        }
+        if (recent.isEmpty()) {
+            return;
+        }
+
+        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mEngine.setRules(readRules(sharedPrefs));
+
+        List<AlertRuleEngine.Alert> alerts = mEngine.evaluate(recent);
+        if (alerts.isEmpty()) {
+            return;
+        }
+        Log.i(LOG_TAG, "TEST: " + alerts.size() + " new earthquake alerts");
+
+        sharedPrefs.edit()
+                .putString(ALERTED_KEYS_PREFERENCE, TextUtils.join(ALERTED_KEYS_SEPARATOR, mEngine.getAlertedKeys()))
+                .remove(LEGACY_ALERTED_KEYS_PREFERENCE)
+                .apply();
+
+        createNotificationChannel();
+        NotificationManagerCompat notificationManager = NotificationManagerCompat.from(mContext);
+        for (AlertRuleEngine.Alert alert : alerts) {
+            Earthquake earthquake = alert.getEarthquake();
+            String title = mContext.getString(R.string.alert_notification_title, earthquake.getMagnitude());
+            NotificationCompat.Builder builder = new NotificationCompat.Builder(mContext, CHANNEL_ID)
+                    .setSmallIcon(android.R.drawable.ic_dialog_alert)
+                    .setContentTitle(title)
+                    .setContentText(earthquake.getLocation())
+                    .setWhen(earthquake.getTimeInMilliseconds())
+                    .setShowWhen(true)
+                    .setAutoCancel(true)
+                    .setPriority(NotificationCompat.PRIORITY_HIGH);
+            // One notification per rule and event, so a second matching rule does not replace the first
+            notificationManager.notify(alert.getKey().hashCode(), builder.build());
+        }
+    }
+
+    /**
+     * Returns the rules currently defined in the settings. A rule whose magnitude or
+     * home location is left blank is disabled.
+     */
+    private List<AlertRule> readRules(SharedPreferences sharedPrefs) {
+        List<AlertRule> rules = new ArrayList<>();
+
+        Double worldwideMagnitude = readDouble(sharedPrefs, R.string.settings_alert_worldwide_magnitude_key,
+                R.string.settings_alert_worldwide_magnitude_default);
+        if (worldwideMagnitude != null) {
+            rules.add(new AlertRule(WORLDWIDE_RULE_ID, worldwideMagnitude));
+        }
+
+        Double nearbyMagnitude = readDouble(sharedPrefs, R.string.settings_alert_nearby_magnitude_key,
+                R.string.settings_alert_nearby_magnitude_default);
+        Double radius = readDouble(sharedPrefs, R.string.settings_alert_radius_key,
+                R.string.settings_alert_radius_default);
+        Double latitude = readDouble(sharedPrefs, R.string.settings_home_latitude_key,
+                R.string.settings_home_latitude_default);
+        Double longitude = readDouble(sharedPrefs, R.string.settings_home_longitude_key,
+                R.string.settings_home_longitude_default);
+        if (nearbyMagnitude != null && radius != null && radius > 0
+                && latitude != null && longitude != null) {
+            rules.add(new AlertRule(NEARBY_RULE_ID, nearbyMagnitude, latitude, longitude, radius));
+        }
+        return rules;
+    }
+
+    /**
+     * Returns the preference as a number, or null if it is blank or not a number.
+     */
+    private Double readDouble(SharedPreferences sharedPrefs, int keyId, int defaultId) {
+        String value = sharedPrefs.getString(mContext.getString(keyId), mContext.getString(defaultId));
+        if (TextUtils.isEmpty(value)) {
+            return null;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            Log.e(LOG_TAG, "Problem parsing the alert preference " + value, e);
+            return null;
+        }
+    }
+
+    private void createNotificationChannel() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+            return;
+        }
+        NotificationChannel channel = new NotificationChannel(CHANNEL_ID,
+                mContext.getString(R.string.alert_channel_name), NotificationManager.IMPORTANCE_HIGH);
+        NotificationManager notificationManager = mContext.getSystemService(NotificationManager.class);
+        notificationManager.createNotificationChannel(channel);
+    }
+}
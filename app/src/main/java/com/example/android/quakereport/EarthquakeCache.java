@@ -0,0 +1,497 @@
+package com.example.android.quakereport;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.collection.LruCache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Two-tier cache of parsed query results: an in-memory LRU bounded by the estimated byte
+ * cost of the earthquakes, backed by a compact binary copy in the app cache directory.
+ * <p>
+ * The memory tier shrinks or empties itself on {@link ComponentCallbacks2#onTrimMemory}, the
+ * disk tier keeps the results so they survive navigation and process death. Disk access
+ * happens on the caller thread, so call {@link #get} and {@link #put} from the loader.
+ */
+public final class EarthquakeCache implements ComponentCallbacks2 {
+
+    /**
+     * Tag for log messages
+     */
+    private static final String LOG_TAG = EarthquakeCache.class.getSimpleName();
+
+    /**
+     * Version of the binary format, bumped when {@link Earthquake} or its encoding changes
+     */
+    private static final int FORMAT_VERSION = 2;
+
+    /**
+     * Name of the disk tier directory, inside the app cache directory
+     */
+    private static final String DIRECTORY_NAME = "earthquakes";
+
+    /**
+     * Maximum number of query results kept on disk
+     */
+    private static final int MAX_DISK_ENTRIES = 20;
+
+    /**
+     * Orders the disk tier files from the most to the least recently written
+     */
+    private static final Comparator<File> NEWEST_FIRST = new Comparator<File>() {
+        @Override
+        public int compare(File a, File b) {
+            long diff = b.lastModified() - a.lastModified();
+            return diff < 0 ? -1 : (diff == 0 ? 0 : 1);
+        }
+    };
+
+    /**
+     * A cached query result and the time it was fetched.
+     */
+    public static final class Entry {
+
+        private final List<Earthquake> mEarthquakes;
+
+        private final long mFetchedAtMillis;
+
+        public Entry(List<Earthquake> earthquakes, long fetchedAtMillis) {
+            mEarthquakes = earthquakes;
+            mFetchedAtMillis = fetchedAtMillis;
+        }
+
+        public List<Earthquake> getEarthquakes() {
+            return mEarthquakes;
+        }
+
+        public long getFetchedAtMillis() {
+            return mFetchedAtMillis;
+        }
+
+        /**
+         * Returns the entry in the compact binary form of the disk tier, small enough for a
+         * saved instance state when there are not too many earthquakes.
+         */
+        public byte[] toByteArray() {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream output = new DataOutputStream(bytes);
+            try {
+                output.writeInt(FORMAT_VERSION);
+                output.writeLong(mFetchedAtMillis);
+                writeEarthquakes(output, mEarthquakes);
+                output.flush();
+            } catch (IOException e) {
+                // Not thrown by a ByteArrayOutputStream
+                throw new IllegalStateException(e);
+            }
+            return bytes.toByteArray();
+        }
+
+        /**
+         * Reads an entry written by {@link #toByteArray()}, or returns null if it is not valid.
+         */
+        public static Entry fromByteArray(byte[] bytes) {
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes));
+            try {
+                if (input.readInt() != FORMAT_VERSION) {
+                    return null;
+                }
+                long fetchedAtMillis = input.readLong();
+                return new Entry(readEarthquakes(input), fetchedAtMillis);
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem reading the saved earthquakes", e);
+                return null;
+            }
+        }
+    }
+
+    private static EarthquakeCache sInstance;
+
+    private final LruCache<String, Entry> mMemoryCache;
+
+    private final File mDirectory;
+
+    private EarthquakeCache(Context context) {
+        // Use a sixteenth of the heap, or a thirty-second on low-RAM devices
+        long maxMemory = Runtime.getRuntime().maxMemory();
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        boolean lowRam = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT
+                && activityManager != null && activityManager.isLowRamDevice();
+        int maxSize = (int) Math.min(Integer.MAX_VALUE, maxMemory / (lowRam ? 32 : 16));
+
+        mMemoryCache = new LruCache<String, Entry>(maxSize) {
+            @Override
+            protected int sizeOf(String key, Entry entry) {
+                return estimateSize(entry.getEarthquakes());
+            }
+        };
+        mDirectory = new File(context.getCacheDir(), DIRECTORY_NAME);
+    }
+
+    public static synchronized EarthquakeCache getInstance(Context context) {
+        if (sInstance == null) {
+            Context appContext = context.getApplicationContext();
+            sInstance = new EarthquakeCache(appContext);
+            appContext.registerComponentCallbacks(sInstance);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns the cache key of a request URL. The "format" parameter is ignored since every
+     * format decodes to the same earthquakes.
+     */
+    public static String keyFor(String requestUrl) {
+        Uri uri = Uri.parse(requestUrl);
+        Uri.Builder builder = uri.buildUpon().clearQuery();
+        for (String name : uri.getQueryParameterNames()) {
+            if (!"format".equals(name)) {
+                for (String value : uri.getQueryParameters(name)) {
+                    builder.appendQueryParameter(name, value);
+                }
+            }
+        }
+        return builder.build().toString();
+    }
+
+    /**
+     * Returns the cached result of the query if it is in memory, or null. Unlike
+     * {@link #get}, this never touches the disk, so it can be called on the main thread.
+     */
+    public Entry peek(String key) {
+        return mMemoryCache.get(key);
+    }
+
+    /**
+     * Returns the cached result of the query, from memory or else from disk, or null.
+     */
+    public Entry get(String key) {
+        Entry entry = mMemoryCache.get(key);
+        if (entry != null) {
+            return entry;
+        }
+        entry = readFromDisk(key);
+        if (entry != null) {
+            mMemoryCache.put(key, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Stores the result of the query in both tiers.
+     */
+    public void put(String key, Entry entry) {
+        mMemoryCache.put(key, entry);
+        writeToDisk(key, entry);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        Log.i(LOG_TAG, "TEST: onTrimMemory(" + level + ") called...");
+        if (level >= TRIM_MEMORY_MODERATE || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            // We are likely to be killed soon or memory is very tight: everything is on disk
+            mMemoryCache.evictAll();
+        } else if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_LOW) {
+            mMemoryCache.trimToSize(mMemoryCache.maxSize() / 4);
+        } else if (level >= TRIM_MEMORY_UI_HIDDEN || level == TRIM_MEMORY_RUNNING_MODERATE) {
+            mMemoryCache.trimToSize(mMemoryCache.maxSize() / 2);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        mMemoryCache.evictAll();
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    /**
+     * Returns a rough estimate of the heap used by the earthquakes, in bytes.
+     */
+    static int estimateSize(List<Earthquake> earthquakes) {
+        // Object headers and fields of the Earthquake, its Long and its three Strings,
+        // plus two bytes per character
+        int size = 16;
+        for (Earthquake earthquake : earthquakes) {
+            size += 160 + 2 * (length(earthquake.getId()) + length(earthquake.getLocation())
+                    + length(earthquake.getUrl()));
+        }
+        return size;
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    private File fileFor(String key) {
+        return new File(mDirectory, Integer.toHexString(key.hashCode()) + ".bin");
+    }
+
+    private synchronized Entry readFromDisk(String key) {
+        File file = fileFor(key);
+        if (!file.exists()) {
+            return null;
+        }
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (input.readInt() != FORMAT_VERSION || !key.equals(input.readUTF())) {
+                return null;
+            }
+            long fetchedAtMillis = input.readLong();
+            return new Entry(readEarthquakes(input), fetchedAtMillis);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem reading the cached earthquakes", e);
+            return null;
+        } finally {
+            closeQuietly(input);
+        }
+    }
+
+    private synchronized void writeToDisk(String key, Entry entry) {
+        if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+            Log.e(LOG_TAG, "Problem creating the cache directory");
+            return;
+        }
+        File file = fileFor(key);
+        File tempFile = new File(mDirectory, file.getName() + ".tmp");
+        DataOutputStream output = null;
+        try {
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            output.writeInt(FORMAT_VERSION);
+            output.writeUTF(key);
+            output.writeLong(entry.getFetchedAtMillis());
+            writeEarthquakes(output, entry.getEarthquakes());
+            output.close();
+            output = null;
+            // Rename so a reader never sees a half written file
+            if (!tempFile.renameTo(file)) {
+                Log.e(LOG_TAG, "Problem renaming the cached earthquakes");
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem writing the cached earthquakes", e);
+        } finally {
+            closeQuietly(output);
+            tempFile.delete();
+        }
+        pruneDisk();
+    }
+
+    /**
+     * Deletes the least recently written results beyond {@link #MAX_DISK_ENTRIES}.
+     */
+    private void pruneDisk() {
+        File[] files = mDirectory.listFiles();
+        if (files == null || files.length <= MAX_DISK_ENTRIES) {
+            return;
+        }
+        Arrays.sort(files, NEWEST_FIRST);
+        for (int i = MAX_DISK_ENTRIES; i < files.length; i++) {
+            files[i].delete();
+        }
+    }
+
+    /**
+     * Writes the earthquakes in a compact binary form.
+     */
+    static void writeEarthquakes(DataOutput output, List<Earthquake> earthquakes) throws IOException {
+        output.writeInt(earthquakes.size());
+        for (Earthquake earthquake : earthquakes) {
+            output.writeUTF(earthquake.getId());
+            output.writeDouble(earthquake.getMagnitude());
+            writeNullableUTF(output, earthquake.getLocation());
+            output.writeLong(earthquake.getTimeInMilliseconds());
+            writeNullableUTF(output, earthquake.getUrl());
+            output.writeDouble(earthquake.getLatitude());
+            output.writeDouble(earthquake.getLongitude());
+            output.writeDouble(earthquake.getDepth());
+        }
+    }
+
+    /**
+     * Writes a string that may be null, as a presence flag followed by the string.
+     */
+    private static void writeNullableUTF(DataOutput output, String value) throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) {
+            output.writeUTF(value);
+        }
+    }
+
+    private static String readNullableUTF(DataInput input) throws IOException {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+
+    /**
+     * Reads earthquakes written by {@link #writeEarthquakes}.
+     */
+    static List<Earthquake> readEarthquakes(DataInput input) throws IOException {
+        int count = input.readInt();
+        List<Earthquake> earthquakes = new ArrayList<>(Math.min(count, 1024));
+        for (int i = 0; i < count; i++) {
+            earthquakes.add(readEarthquake(input));
+        }
+        return earthquakes;
+    }
+
+    private static Earthquake readEarthquake(DataInput input) throws IOException {
+        String id = input.readUTF();
+        double magnitude = input.readDouble();
+        String location = readNullableUTF(input);
+        long time = input.readLong();
+        String url = readNullableUTF(input);
+        double latitude = input.readDouble();
+        double longitude = input.readDouble();
+        double depth = input.readDouble();
+        return new Earthquake(id, magnitude, location, time, url, latitude, longitude, depth);
+    }
+
+    /**
+     * Opens a reader over every earthquake stored in the disk tier, newest query result
+     * first. Earthquakes are read one at a time, so memory use does not depend on how many
+     * are stored. An event that is part of several cached queries is read once per query.
+     */
+    public Reader openReader() {
+        File[] files = mDirectory.listFiles();
+        List<File> cacheFiles = new ArrayList<>();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().endsWith(".bin")) {
+                    cacheFiles.add(file);
+                }
+            }
+        }
+        // So the most recent version of an event is the one read first
+        Collections.sort(cacheFiles, NEWEST_FIRST);
+        return new Reader(cacheFiles);
+    }
+
+    /**
+     * Streams the earthquakes of a list of cache files.
+     */
+    public static final class Reader implements Closeable {
+
+        private final List<File> mFiles;
+
+        private final int mTotalCount;
+
+        private int mFileIndex;
+
+        private DataInputStream mInput;
+
+        /**
+         * Earthquakes left to read in the current file
+         */
+        private int mRemaining;
+
+        Reader(List<File> files) {
+            mFiles = files;
+            int totalCount = 0;
+            for (File file : files) {
+                totalCount += countOf(file);
+            }
+            mTotalCount = totalCount;
+        }
+
+        /**
+         * Returns the number of earthquakes stored, read from the file headers.
+         */
+        public int getTotalCount() {
+            return mTotalCount;
+        }
+
+        /**
+         * Returns the next earthquake, or null when every file has been read.
+         */
+        public Earthquake next() throws IOException {
+            while (mRemaining == 0) {
+                closeQuietly(mInput);
+                mInput = null;
+                if (mFileIndex == mFiles.size()) {
+                    return null;
+                }
+                openFile(mFiles.get(mFileIndex++));
+            }
+            mRemaining--;
+            return readEarthquake(mInput);
+        }
+
+        @Override
+        public void close() {
+            closeQuietly(mInput);
+            mInput = null;
+        }
+
+        private void openFile(File file) {
+            try {
+                mInput = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+                mRemaining = readHeader(mInput);
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem opening the cached earthquakes " + file, e);
+                mRemaining = 0;
+            }
+        }
+
+        private static int countOf(File file) {
+            DataInputStream input = null;
+            try {
+                input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+                return readHeader(input);
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem reading the header of " + file, e);
+                return 0;
+            } finally {
+                closeQuietly(input);
+            }
+        }
+
+        /**
+         * Skips the header of a cache file and returns its number of earthquakes,
+         * or 0 for a file of another format version.
+         */
+        private static int readHeader(DataInput input) throws IOException {
+            if (input.readInt() != FORMAT_VERSION) {
+                return 0;
+            }
+            input.readUTF();
+            input.readLong();
+            return input.readInt();
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem closing the cache file", e);
+            }
+        }
+    }
+}
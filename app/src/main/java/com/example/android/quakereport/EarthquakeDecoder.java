@@ -0,0 +1,23 @@
+package com.example.android.quakereport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * An {@link EarthquakeDecoder} turns the body of a USGS response in a given format
+ * into a list of {@link Earthquake} objects.
+ */
+public interface EarthquakeDecoder {
+
+    /**
+     * Returns the value of the "format" query parameter this decoder understands.
+     */
+    String getFormat();
+
+    /**
+     * Reads the whole response body and returns the decoded earthquakes, or null if the
+     * body is empty.
+     */
+    List<Earthquake> decode(InputStream inputStream) throws IOException;
+}
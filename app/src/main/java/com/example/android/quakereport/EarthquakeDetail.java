@@ -0,0 +1,135 @@
+package com.example.android.quakereport;
+
+import android.text.TextUtils;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * An {@link EarthquakeDetail} object contains the details of a single earthquake, read from
+ * the USGS per-event "detail" GeoJSON.
+ */
+public class EarthquakeDetail {
+
+    /**
+     * Tag for the log messages
+     */
+    private static final String LOG_TAG = EarthquakeDetail.class.getSimpleName();
+
+    /**
+     * Number of "Did you feel it?" reports, or -1 if unknown
+     */
+    private int mFeltReports;
+
+    /**
+     * Maximum reported "Did you feel it?" intensity, or NaN if unknown
+     */
+    private double mCommunityIntensity;
+
+    /**
+     * Maximum estimated instrumental (ShakeMap) intensity, or NaN if unknown
+     */
+    private double mShakeMapIntensity;
+
+    /**
+     * True if a tsunami may have been generated
+     */
+    private boolean mTsunami;
+
+    /**
+     * PAGER alert level ("green", "yellow", "orange", "red"), or null if none
+     */
+    private String mAlertLevel;
+
+    /**
+     * Depth of the hypocenter, in kilometers
+     */
+    private double mDepth;
+
+    /**
+     * Constructs a new {@link EarthquakeDetail} object.
+     *
+     * @param feltReports        is the number of "Did you feel it?" reports, or -1
+     * @param communityIntensity is the maximum "Did you feel it?" intensity, or NaN
+     * @param shakeMapIntensity  is the maximum ShakeMap intensity, or NaN
+     * @param tsunami            is true if a tsunami may have been generated
+     * @param alertLevel         is the PAGER alert level, or null
+     * @param depth              is the depth of the hypocenter, in kilometers
+     */
+    public EarthquakeDetail(int feltReports, double communityIntensity, double shakeMapIntensity,
+                            boolean tsunami, String alertLevel, double depth) {
+        mFeltReports = feltReports;
+        mCommunityIntensity = communityIntensity;
+        mShakeMapIntensity = shakeMapIntensity;
+        mTsunami = tsunami;
+        mAlertLevel = alertLevel;
+        mDepth = depth;
+    }
+
+    public int getFeltReports() {
+        return mFeltReports;
+    }
+
+    public double getCommunityIntensity() {
+        return mCommunityIntensity;
+    }
+
+    public double getShakeMapIntensity() {
+        return mShakeMapIntensity;
+    }
+
+    public boolean isTsunami() {
+        return mTsunami;
+    }
+
+    public String getAlertLevel() {
+        return mAlertLevel;
+    }
+
+    public double getDepth() {
+        return mDepth;
+    }
+
+    /**
+     * Return an {@link EarthquakeDetail} built up from parsing the given detail GeoJSON
+     * response, or null if it is empty or malformed.
+     */
+    public static EarthquakeDetail fromJson(String detailJSON) {
+        // If the JSON string is empty or null, then return early.
+        if (TextUtils.isEmpty(detailJSON)) {
+            return null;
+        }
+
+        try {
+            JSONObject feature = new JSONObject(detailJSON);
+            JSONObject properties = feature.getJSONObject("properties");
+
+            int feltReports = properties.isNull("felt") ? -1 : properties.getInt("felt");
+            double communityIntensity = properties.isNull("cdi") ? Double.NaN : properties.getDouble("cdi");
+            boolean tsunami = properties.optInt("tsunami", 0) == 1;
+            String alertLevel = properties.isNull("alert") ? null : properties.getString("alert");
+
+            // The ShakeMap intensity is more precise in the shakemap product than in "mmi"
+            double shakeMapIntensity = properties.isNull("mmi") ? Double.NaN : properties.getDouble("mmi");
+            JSONObject products = properties.optJSONObject("products");
+            JSONArray shakeMaps = products == null ? null : products.optJSONArray("shakemap");
+            if (shakeMaps != null && shakeMaps.length() > 0) {
+                JSONObject shakeMapProperties = shakeMaps.getJSONObject(0).optJSONObject("properties");
+                if (shakeMapProperties != null && shakeMapProperties.has("maxmmi")) {
+                    shakeMapIntensity = shakeMapProperties.optDouble("maxmmi", shakeMapIntensity);
+                }
+            }
+
+            // GeoJSON orders the coordinates as [longitude, latitude, depth]
+            double depth = feature.getJSONObject("geometry").getJSONArray("coordinates").getDouble(2);
+
+            return new EarthquakeDetail(feltReports, communityIntensity, shakeMapIntensity,
+                    tsunami, alertLevel, depth);
+        } catch (JSONException e) {
+            Log.e(LOG_TAG, "Problem parsing the earthquake detail JSON results", e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Bundle;
+import android.text.TextUtils;
+import android.util.Log;
+import android.view.View;
+import android.widget.Button;
+import android.widget.TextView;
+
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.loader.app.LoaderManager;
+import androidx.loader.content.Loader;
+
+import java.text.DecimalFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Shows the details of a single earthquake: the fields already known from the list right
+ * away, then the felt reports, tsunami flag and intensities from the USGS detail GeoJSON.
+ */
+public class EarthquakeDetailActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<EarthquakeDetail> {
+
+    public static final String LOG_TAG = EarthquakeDetailActivity.class.getName();
+
+    /**
+     * Intent extras describing the earthquake, as shown in the list
+     */
+    private static final String EXTRA_ID = "com.example.android.quakereport.extra.ID";
+    private static final String EXTRA_MAGNITUDE = "com.example.android.quakereport.extra.MAGNITUDE";
+    private static final String EXTRA_LOCATION = "com.example.android.quakereport.extra.LOCATION";
+    private static final String EXTRA_TIME = "com.example.android.quakereport.extra.TIME";
+    private static final String EXTRA_URL = "com.example.android.quakereport.extra.URL";
+    private static final String EXTRA_DEPTH = "com.example.android.quakereport.extra.DEPTH";
+
+    /**
+     * Constant value for the detail loader ID.
+     */
+    private static final int DETAIL_LOADER_ID = 1;
+
+    /**
+     * ProgressBar shown while the details are loading
+     */
+    private View mLoadingIndicator;
+
+    /**
+     * Returns an intent that opens the detail screen of the given earthquake.
+     */
+    public static Intent newIntent(Context context, Earthquake earthquake) {
+        Intent intent = new Intent(context, EarthquakeDetailActivity.class);
+        intent.putExtra(EXTRA_ID, earthquake.getId());
+        intent.putExtra(EXTRA_MAGNITUDE, earthquake.getMagnitude());
+        intent.putExtra(EXTRA_LOCATION, earthquake.getLocation());
+        intent.putExtra(EXTRA_TIME, earthquake.getTimeInMilliseconds().longValue());
+        intent.putExtra(EXTRA_URL, earthquake.getUrl());
+        intent.putExtra(EXTRA_DEPTH, earthquake.getDepth());
+        return intent;
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.earthquake_detail_activity);
+
+        Intent intent = getIntent();
+        mLoadingIndicator = findViewById(R.id.detail_loading_indicator);
+
+        // Show what we already know from the list right away
+        TextView magnitudeView = findViewById(R.id.detail_magnitude);
+        magnitudeView.setText(new DecimalFormat("0.0").format(intent.getDoubleExtra(EXTRA_MAGNITUDE, 0)));
+
+        TextView locationView = findViewById(R.id.detail_location);
+        locationView.setText(intent.getStringExtra(EXTRA_LOCATION));
+
+        TextView timeView = findViewById(R.id.detail_time);
+        SimpleDateFormat dateFormat = new SimpleDateFormat("LLL dd, yyyy h:mm a");
+        timeView.setText(dateFormat.format(new Date(intent.getLongExtra(EXTRA_TIME, 0))));
+
+        TextView depthView = findViewById(R.id.detail_depth);
+        depthView.setText(getString(R.string.detail_depth, intent.getDoubleExtra(EXTRA_DEPTH, 0)));
+
+        // The full USGS page is still one tap away
+        final String url = intent.getStringExtra(EXTRA_URL);
+        Button websiteButton = findViewById(R.id.detail_open_website);
+        if (TextUtils.isEmpty(url)) {
+            // Events of FDSN sources without a known event page have no website
+            websiteButton.setVisibility(View.GONE);
+        } else {
+            websiteButton.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View view) {
+                    startActivity(new Intent(Intent.ACTION_VIEW, Uri.parse(url)));
+                }
+            });
+        }
+
+        if (DetailPrefetcher.hasDetail(url)) {
+            LoaderManager.getInstance(this).initLoader(DETAIL_LOADER_ID, null, this);
+        } else {
+            // Events of the other FDSN agencies have no USGS detail
+            mLoadingIndicator.setVisibility(View.GONE);
+            ((TextView) findViewById(R.id.detail_felt)).setText(R.string.detail_unavailable);
+        }
+    }
+
+    @Override
+    public Loader<EarthquakeDetail> onCreateLoader(int id, Bundle args) {
+        return new EarthquakeDetailLoader(this, getIntent().getStringExtra(EXTRA_ID));
+    }
+
+    @Override
+    public void onLoadFinished(Loader<EarthquakeDetail> loader, EarthquakeDetail detail) {
+        Log.i(LOG_TAG, "TEST: detail onLoadFinished() called...");
+        mLoadingIndicator.setVisibility(View.GONE);
+
+        TextView feltView = findViewById(R.id.detail_felt);
+        TextView intensityView = findViewById(R.id.detail_intensity);
+        TextView shakeMapView = findViewById(R.id.detail_shakemap);
+        TextView tsunamiView = findViewById(R.id.detail_tsunami);
+        TextView alertView = findViewById(R.id.detail_alert);
+
+        if (detail == null) {
+            feltView.setText(R.string.detail_unavailable);
+            return;
+        }
+
+        TextView depthView = findViewById(R.id.detail_depth);
+        depthView.setText(getString(R.string.detail_depth, detail.getDepth()));
+
+        feltView.setText(detail.getFeltReports() >= 0
+                ? getString(R.string.detail_felt, detail.getFeltReports())
+                : getString(R.string.detail_felt_unknown));
+
+        showIntensity(intensityView, R.string.detail_community_intensity, detail.getCommunityIntensity());
+        showIntensity(shakeMapView, R.string.detail_shakemap_intensity, detail.getShakeMapIntensity());
+
+        tsunamiView.setText(detail.isTsunami() ? R.string.detail_tsunami : R.string.detail_no_tsunami);
+
+        if (detail.getAlertLevel() != null) {
+            alertView.setText(getString(R.string.detail_alert, detail.getAlertLevel()));
+            alertView.setVisibility(View.VISIBLE);
+        } else {
+            alertView.setVisibility(View.GONE);
+        }
+    }
+
+    @Override
+    public void onLoaderReset(Loader<EarthquakeDetail> loader) {
+    }
+
+    /**
+     * Shows an intensity, or hides its view when it is unknown.
+     */
+    private void showIntensity(TextView view, int formatId, double intensity) {
+        if (Double.isNaN(intensity)) {
+            view.setVisibility(View.GONE);
+        } else {
+            view.setText(getString(formatId, intensity));
+            view.setVisibility(View.VISIBLE);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.loader.content.AsyncTaskLoader;
+
+/**
+ * Loads the {@link EarthquakeDetail} of a single event through the {@link DetailPrefetcher},
+ * so a detail prefetched while the user was on the list is delivered right away.
+ */
+public class EarthquakeDetailLoader extends AsyncTaskLoader<EarthquakeDetail> {
+
+    /**
+     * Tag for log messages
+     */
+    private static final String LOG_TAG = EarthquakeDetailLoader.class.getName();
+
+    /**
+     * USGS id of the event
+     */
+    private String mEventId;
+
+    /**
+     * Constructs a new {@link EarthquakeDetailLoader}.
+     *
+     * @param context of the activity
+     * @param eventId is the USGS id of the event to load
+     */
+    public EarthquakeDetailLoader(Context context, String eventId) {
+        super(context);
+        mEventId = eventId;
+    }
+
+    @Override
+    protected void onStartLoading() {
+        EarthquakeDetail detail = DetailPrefetcher.getInstance().getCached(mEventId);
+        if (detail != null) {
+            Log.i(LOG_TAG, "TEST: detail of " + mEventId + " was prefetched");
+            deliverResult(detail);
+        } else {
+            forceLoad();
+        }
+    }
+
+    /**
+     * This is on a background thread.
+     */
+    @Override
+    public EarthquakeDetail loadInBackground() {
+        return DetailPrefetcher.getInstance().load(mEventId);
+    }
+}
@@ -0,0 +1,234 @@
+package com.example.android.quakereport;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Streams the earthquakes of the local store to CSV or GeoJSON.
+ * <p>
+ * Earthquakes are read and written one at a time through a buffered writer, in batches
+ * between which progress is reported and cancellation is checked. Each cached query is
+ * already unique by id; an event stored by several queries is written once as long as its
+ * copies are less than {@link #MAX_RECENT_IDS} records apart, which covers queries refreshed
+ * around the same time. Copies further apart are written again, so memory stays bounded.
+ */
+public class EarthquakeExporter {
+
+    /**
+     * Number of earthquakes written between two progress reports
+     */
+    private static final int BATCH_SIZE = 500;
+
+    /**
+     * Number of the most recently written event ids duplicates are checked against
+     */
+    private static final int MAX_RECENT_IDS = 5000;
+
+    /**
+     * Supported export formats.
+     */
+    public enum Format {
+        CSV("csv", "text/csv"),
+        GEOJSON("geojson", "application/geo+json");
+
+        private final String mExtension;
+
+        private final String mMimeType;
+
+        Format(String extension, String mimeType) {
+            mExtension = extension;
+            mMimeType = mimeType;
+        }
+
+        public String getExtension() {
+            return mExtension;
+        }
+
+        public String getMimeType() {
+            return mMimeType;
+        }
+    }
+
+    /**
+     * Receives the progress of an export and tells it when to stop.
+     */
+    public interface Progress {
+
+        /**
+         * Called after each batch with the number of earthquakes written so far.
+         */
+        void onProgress(int exported, int total);
+
+        /**
+         * Returns true if the export should stop.
+         */
+        boolean isCancelled();
+    }
+
+    private final Format mFormat;
+
+    /**
+     * ISO 8601 formatter for the time column, reused for every row
+     */
+    private final SimpleDateFormat mTimeFormat;
+
+    /**
+     * Constructs a new {@link EarthquakeExporter}.
+     *
+     * @param format is the format to write
+     */
+    public EarthquakeExporter(Format format) {
+        mFormat = format;
+        mTimeFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+        mTimeFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+    }
+
+    /**
+     * Writes every distinct earthquake of the reader to the output stream. The stream is
+     * not closed.
+     *
+     * @return the number of earthquakes written, or -1 if the export was cancelled
+     */
+    public int export(EarthquakeCache.Reader reader, OutputStream outputStream, Progress progress)
+            throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, Charset.forName("UTF-8")));
+        int total = reader.getTotalCount();
+        int exported = 0;
+        int read = 0;
+        Map<String, Boolean> recentIds = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > MAX_RECENT_IDS;
+            }
+        };
+
+        writeHeader(writer);
+        Earthquake earthquake;
+        while ((earthquake = reader.next()) != null) {
+            read++;
+            if (recentIds.put(earthquake.getId(), Boolean.TRUE) == null) {
+                writeEarthquake(writer, earthquake, exported == 0);
+                exported++;
+            }
+            // Progress counts the records read: the total includes the duplicates
+            if (read % BATCH_SIZE == 0) {
+                writer.flush();
+                if (progress.isCancelled()) {
+                    return -1;
+                }
+                progress.onProgress(read, total);
+            }
+        }
+        writeFooter(writer);
+        writer.flush();
+        progress.onProgress(total, total);
+        return exported;
+    }
+
+    private void writeHeader(Writer writer) throws IOException {
+        if (mFormat == Format.CSV) {
+            writer.write("time,latitude,longitude,depth,mag,id,place,url\n");
+        } else {
+            writer.write("{\"type\":\"FeatureCollection\",\"features\":[\n");
+        }
+    }
+
+    private void writeFooter(Writer writer) throws IOException {
+        if (mFormat == Format.GEOJSON) {
+            writer.write("\n]}\n");
+        }
+    }
+
+    private void writeEarthquake(Writer writer, Earthquake earthquake, boolean first) throws IOException {
+        String time = mTimeFormat.format(new Date(earthquake.getTimeInMilliseconds()));
+        if (mFormat == Format.CSV) {
+            writer.write(time);
+            writer.write(',');
+            writer.write(String.valueOf(earthquake.getLatitude()));
+            writer.write(',');
+            writer.write(String.valueOf(earthquake.getLongitude()));
+            writer.write(',');
+            writer.write(String.valueOf(earthquake.getDepth()));
+            writer.write(',');
+            writer.write(String.valueOf(earthquake.getMagnitude()));
+            writer.write(',');
+            writeCsvField(writer, earthquake.getId());
+            writer.write(',');
+            writeCsvField(writer, earthquake.getLocation());
+            writer.write(',');
+            writeCsvField(writer, earthquake.getUrl());
+            writer.write('\n');
+        } else {
+            if (!first) {
+                writer.write(",\n");
+            }
+            writer.write("{\"type\":\"Feature\",\"id\":");
+            writeJsonString(writer, earthquake.getId());
+            writer.write(",\"properties\":{\"mag\":");
+            writer.write(String.valueOf(earthquake.getMagnitude()));
+            writer.write(",\"place\":");
+            writeJsonString(writer, earthquake.getLocation());
+            writer.write(",\"time\":");
+            writer.write(String.valueOf(earthquake.getTimeInMilliseconds()));
+            writer.write(",\"url\":");
+            writeJsonString(writer, earthquake.getUrl());
+            writer.write("},\"geometry\":{\"type\":\"Point\",\"coordinates\":[");
+            writer.write(String.valueOf(earthquake.getLongitude()));
+            writer.write(',');
+            writer.write(String.valueOf(earthquake.getLatitude()));
+            writer.write(',');
+            writer.write(String.valueOf(earthquake.getDepth()));
+            writer.write("]}}");
+        }
+    }
+
+    /**
+     * Writes a CSV field, quoting it when it contains a comma, a quote or a line break.
+     */
+    private static void writeCsvField(Writer writer, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0
+                && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    /**
+     * Writes a JSON string literal, escaping quotes, backslashes and control characters.
+     */
+    private static void writeJsonString(Writer writer, String value) throws IOException {
+        if (value == null) {
+            writer.write("null");
+            return;
+        }
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                writer.write('\\');
+                writer.write(c);
+            } else if (c < 0x20) {
+                writer.write(String.format(Locale.US, "\\u%04x", (int) c));
+            } else {
+                writer.write(c);
+            }
+        }
+        writer.write('"');
+    }
+}
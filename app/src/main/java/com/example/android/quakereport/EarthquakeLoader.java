@@ -1,13 +1,20 @@
 package com.example.android.quakereport;
 
 import android.content.Context;
-import android.net.ConnectivityManager;
-import android.net.NetworkInfo;
+import android.net.Uri;
 import android.util.Log;
 
 import androidx.loader.content.AsyncTaskLoader;
 
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
 
 public class EarthquakeLoader extends AsyncTaskLoader<List<Earthquake>> {
 
@@ -16,12 +23,53 @@ public class EarthquakeLoader extends AsyncTaskLoader<List<Earthquake>> {
      */
     private static final String LOG_TAG = EarthquakeLoader.class.getName();
 
+    /**
+     * Time window USGS applies to a query without a "starttime"
+     */
+    private static final long DEFAULT_QUERY_WINDOW_MILLIS = 30L * 24 * 60 * 60 * 1000;
+
     /**
      * Query URL
      */
     private String mUrl;
 
-    private Context mContext;
+    /**
+     * How much data to fetch on the next load, chosen from the current network
+     */
+    private volatile ConnectivityMonitor.FetchStrategy mFetchStrategy = ConnectivityMonitor.FetchStrategy.FULL;
+
+    /**
+     * Whether the loaded earthquakes are run through the alert rules
+     */
+    private boolean mAlertsEnabled = true;
+
+    /**
+     * Whether a fast scroll index is built with each result
+     */
+    private boolean mSectionIndexEnabled = true;
+
+    /**
+     * Result of the last successful load and the time its fetch started, used as the base
+     * of a delta fetch. The loader is retained across configuration changes, and so is this.
+     */
+    private volatile EarthquakeCache.Entry mResult;
+
+    /**
+     * Result currently shown by the activity, or null; only touched on the main thread
+     */
+    private EarthquakeCache.Entry mDeliveredResult;
+
+    /**
+     * True from {@link #forceLoad()} until the load delivers or is cancelled; only touched
+     * on the main thread
+     */
+    private boolean mLoading;
+
+    /**
+     * Fast scroll index of the last result, built with it in the background
+     */
+    private DateSectionIndex mSectionIndex;
+    private List<Earthquake> mIndexedEarthquakes;
 
     /**
      * Constructs a new {@link EarthquakeLoader}.
@@ -32,7 +80,94 @@ public class EarthquakeLoader extends AsyncTaskLoader<List<Earthquake>> {
     public EarthquakeLoader(Context context, String url) {
         super(context);
         mUrl = url;
-        mContext = context;
+    }
+
+    /**
+     * Returns the query URL of this loader.
+     */
+    public String getUrl() {
+        return mUrl;
+    }
+
+    /**
+     * Returns the result last delivered to the activity and the time it was fetched, or null.
+     */
+    public EarthquakeCache.Entry getDeliveredResult() {
+        return mDeliveredResult;
+    }
+
+    /**
+     * Delivers a result restored from a saved instance state, and keeps it as the base the
+     * next load merges updates into.
+     */
+    public void deliverRestoredResult(EarthquakeCache.Entry result) {
+        mResult = result;
+        // A load already running keeps going and delivers its own result afterwards
+        boolean loading = mLoading;
+        deliverResult(result.getEarthquakes());
+        mLoading = loading;
+    }
+
+    /**
+     * Returns true while a load started by {@link #forceLoad()} is running.
+     */
+    public boolean isLoading() {
+        return mLoading;
+    }
+
+    /**
+     * Returns true if nothing was delivered yet, or if the delivered result was fetched
+     * longer ago than the given age.
+     */
+    public boolean isStale(long maxAgeMillis) {
+        return mDeliveredResult == null
+                || System.currentTimeMillis() - mDeliveredResult.getFetchedAtMillis() > maxAgeMillis;
+    }
+
+    @Override
+    public void deliverResult(List<Earthquake> data) {
+        EarthquakeCache.Entry result = mResult;
+        mDeliveredResult = data != null && result != null && data == result.getEarthquakes() ? result : null;
+        mLoading = false;
+        super.deliverResult(data);
+    }
+
+    @Override
+    protected void onForceLoad() {
+        // Cancels the running load, if any, through onCancelLoad() before starting a new one
+        super.onForceLoad();
+        mLoading = true;
+    }
+
+    @Override
+    protected boolean onCancelLoad() {
+        // Cleared here rather than in onCanceled(), which arrives late, when the load that
+        // replaces the cancelled one may already be running
+        mLoading = false;
+        return super.onCancelLoad();
+    }
+
+    /**
+     * Sets how much data the next load should fetch.
+     */
+    public void setFetchStrategy(ConnectivityMonitor.FetchStrategy fetchStrategy) {
+        mFetchStrategy = fetchStrategy;
+    }
+
+    /**
+     * Sets whether the loaded earthquakes are run through the alert rules. Disable it for
+     * historical queries, which would otherwise alert about old events.
+     */
+    public void setAlertsEnabled(boolean alertsEnabled) {
+        mAlertsEnabled = alertsEnabled;
+    }
+
+    /**
+     * Sets whether a fast scroll index is built with each result. Disable it when the
+     * result is not shown in a list.
+     */
+    public void setSectionIndexEnabled(boolean sectionIndexEnabled) {
+        mSectionIndexEnabled = sectionIndexEnabled;
     }
 
     @Override
@@ -47,16 +182,144 @@ public class EarthquakeLoader extends AsyncTaskLoader<List<Earthquake>> {
      */
     @Override
     public List<Earthquake> loadInBackground() {
+        List<Earthquake> earthquakes = loadEarthquakes();
+        if (earthquakes != null && mSectionIndexEnabled) {
+            DateSectionIndex sectionIndex = DateSectionIndex.build(earthquakes);
+            synchronized (this) {
+                mSectionIndex = sectionIndex;
+                mIndexedEarthquakes = earthquakes;
+            }
+        }
+        return earthquakes;
+    }
 
-        if (mUrl == null || !QueryUtils.isNetworkActive(mContext)) {
-            Log.i(LOG_TAG,"TEST: LoadInBackground() called, No Internet connection");
+    /**
+     * Returns the fast scroll index of the given result of this loader, building it now if
+     * it is not the one indexed in the background.
+     */
+    public synchronized DateSectionIndex getSectionIndex(List<Earthquake> earthquakes) {
+        if (earthquakes != mIndexedEarthquakes) {
+            mSectionIndex = DateSectionIndex.build(earthquakes);
+            mIndexedEarthquakes = earthquakes;
+        }
+        return mSectionIndex;
+    }
+
+    private List<Earthquake> loadEarthquakes() {
+
+        if (mUrl == null) {
             return null;
         }
 
-        Log.i(LOG_TAG, "TEST: LoadInBackground() called, There is Internet connection");
-        // Perform the network request, parse the response, and extract a list of earthquakes.
-        List<Earthquake> earthquakes = QueryUtils.fetchEarthquakeData(mUrl);
+        // A new loader starts from the cached result of the same query, if any, so it can
+        // show it offline and only fetch the updates on a metered link
+        EarthquakeCache cache = EarthquakeCache.getInstance(getContext());
+        String cacheKey = EarthquakeCache.keyFor(mUrl);
+        EarthquakeCache.Entry previous = mResult;
+        if (previous == null) {
+            previous = cache.get(cacheKey);
+            mResult = previous;
+        }
+        List<Earthquake> previousEarthquakes = previous == null ? null : previous.getEarthquakes();
+
+        ConnectivityMonitor.FetchStrategy fetchStrategy = mFetchStrategy;
+        if (fetchStrategy == ConnectivityMonitor.FetchStrategy.NONE) {
+            Log.i(LOG_TAG,"TEST: LoadInBackground() called, No Internet connection");
+            return previousEarthquakes;
+        }
+
+        long fetchStartMillis = System.currentTimeMillis();
+
+        List<Earthquake> earthquakes;
+        if (fetchStrategy == ConnectivityMonitor.FetchStrategy.DELTA && previous != null) {
+            Log.i(LOG_TAG, "TEST: LoadInBackground() called, fetching updates only");
+            List<Earthquake> updates = EarthquakeAggregator.fetchEarthquakeData(
+                    EarthquakeAggregator.sourcesFor(getContext()), buildDeltaUrl(previous.getFetchedAtMillis()));
+            if (updates == null) {
+                return previousEarthquakes;
+            }
+            earthquakes = mergeUpdates(previousEarthquakes, updates);
+            if (mAlertsEnabled) {
+                EarthquakeAlerts.getInstance(getContext()).onEarthquakesLoaded(updates);
+            }
+        } else {
+            Log.i(LOG_TAG, "TEST: LoadInBackground() called, There is Internet connection");
+            // Perform the network request, parse the response, and extract a list of earthquakes.
+            earthquakes = EarthquakeAggregator.fetchEarthquakeData(
+                    EarthquakeAggregator.sourcesFor(getContext()), mUrl);
+            if (earthquakes == null) {
+                // Keep showing the previous result rather than wiping it on a failed refresh
+                return previousEarthquakes;
+            }
+            if (mAlertsEnabled) {
+                EarthquakeAlerts.getInstance(getContext()).onEarthquakesLoaded(earthquakes);
+            }
+        }
+
+        EarthquakeCache.Entry result = new EarthquakeCache.Entry(earthquakes, fetchStartMillis);
+        mResult = result;
+        cache.put(cacheKey, result);
         return earthquakes;
     }
 
-}
\ No newline at end of file
+    /**
+     * Returns the query URL restricted to events updated since the last successful fetch.
+     */
+    private String buildDeltaUrl(long lastFetchMillis) {
+        SimpleDateFormat isoFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss", Locale.US);
+        isoFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return Uri.parse(mUrl).buildUpon()
+                .appendQueryParameter("updatedafter", isoFormat.format(new Date(lastFetchMillis)))
+                .build()
+                .toString();
+    }
+
+    /**
+     * Replaces the previous earthquakes by their updated version (matched by event id), adds
+     * the new ones, drops the ones that fell out of the time window of the query, then
+     * restores the ordering and limit of the original query.
+     */
+    private List<Earthquake> mergeUpdates(List<Earthquake> previous, List<Earthquake> updates) {
+        Map<String, Earthquake> byId = new LinkedHashMap<>();
+        for (Earthquake earthquake : previous) {
+            byId.put(earthquake.getId(), earthquake);
+        }
+        for (Earthquake earthquake : updates) {
+            byId.put(earthquake.getId(), earthquake);
+        }
+
+        // A full fetch would no longer return them
+        long windowStartMillis = queryWindowStartMillis();
+        List<Earthquake> merged = new ArrayList<>(byId.size());
+        for (Earthquake earthquake : byId.values()) {
+            if (earthquake.getTimeInMilliseconds() >= windowStartMillis) {
+                merged.add(earthquake);
+            }
+        }
+        return QueryUtils.applyOrderAndLimit(merged, mUrl);
+    }
+
+    /**
+     * Returns the start of the time window of the query: its "starttime", or the last 30
+     * days USGS defaults to.
+     */
+    private long queryWindowStartMillis() {
+        String startTime = Uri.parse(mUrl).getQueryParameter("starttime");
+        if (startTime != null) {
+            String[] patterns = {"yyyy-MM-dd'T'HH:mm:ss", "yyyy-MM-dd"};
+            for (String pattern : patterns) {
+                SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.US);
+                format.setTimeZone(TimeZone.getTimeZone("UTC"));
+                try {
+                    return format.parse(startTime).getTime();
+                } catch (ParseException e) {
+                    // Try the next pattern
+                }
+            }
+            Log.w(LOG_TAG, "Unknown starttime " + startTime + ", keeping every event");
+            return Long.MIN_VALUE;
+        }
+        return System.currentTimeMillis() - DEFAULT_QUERY_WINDOW_MILLIS;
+    }
+
+}
@@ -0,0 +1,186 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.loader.content.AsyncTaskLoader;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Loads the pages that follow the first page of a query, which {@link EarthquakeLoader} loads,
+ * one page per {@link #forceLoad()} when the list is scrolled to its end.
+ * <p>
+ * Each result holds every page loaded so far, so the result delivered again after a
+ * configuration change still covers the whole list. The pages are not cached and run no
+ * alert rules: they are older events, and a refresh of the first page starts over.
+ * <p>
+ * The first page merges every source, but each source counts its own offset, so the pages
+ * come from the primary source (USGS) only: its offset is the number of its events shown.
+ * Events of the additional FDSN sources only appear on the first page.
+ */
+public class EarthquakePageLoader extends AsyncTaskLoader<List<Earthquake>> {
+
+    /**
+     * Tag for log messages
+     */
+    private static final String LOG_TAG = EarthquakePageLoader.class.getName();
+
+    /**
+     * Query URL, whose "limit" is the page size
+     */
+    private final String mUrl;
+
+    private final int mPageSize;
+
+    /**
+     * First page of the query, as delivered by {@link EarthquakeLoader}
+     */
+    private final List<Earthquake> mFirstPage;
+
+    /**
+     * Earthquakes of the pages loaded so far, after the first page
+     */
+    private volatile List<Earthquake> mPages = Collections.emptyList();
+
+    /**
+     * Number of rows of the query fetched from the primary source so far, including the ones
+     * dropped as duplicates
+     */
+    private volatile int mFetchedCount;
+
+    /**
+     * False once a page came back shorter than the page size
+     */
+    private volatile boolean mHasMore;
+
+    /**
+     * True from {@link #forceLoad()} until the load delivers or is cancelled; only touched
+     * on the main thread
+     */
+    private boolean mLoading;
+
+    /**
+     * Constructs a new {@link EarthquakePageLoader}.
+     *
+     * @param context   of the activity
+     * @param url       of the query, with its page size as "limit"
+     * @param pageSize  number of earthquakes per page
+     * @param firstPage earthquakes already shown for the query
+     */
+    public EarthquakePageLoader(Context context, String url, int pageSize, List<Earthquake> firstPage) {
+        super(context);
+        mUrl = url;
+        mPageSize = pageSize;
+        mFirstPage = firstPage;
+        // The merge keeps the report of the preferred source, so every USGS event on the first
+        // page is a row of the USGS result
+        int primaryCount = 0;
+        for (Earthquake earthquake : firstPage) {
+            if (DetailPrefetcher.hasDetail(earthquake.getUrl())) {
+                primaryCount++;
+            }
+        }
+        mFetchedCount = primaryCount;
+        mHasMore = firstPage.size() >= pageSize;
+    }
+
+    /**
+     * Returns the first page the loaded pages follow.
+     */
+    public List<Earthquake> getFirstPage() {
+        return mFirstPage;
+    }
+
+    /**
+     * Returns the earthquakes of the pages loaded so far, after the first page.
+     */
+    public List<Earthquake> getPages() {
+        return mPages;
+    }
+
+    /**
+     * Returns true if the query may have more earthquakes than loaded so far.
+     */
+    public boolean hasMore() {
+        return mHasMore;
+    }
+
+    /**
+     * Returns true while a load started by {@link #forceLoad()} is running.
+     */
+    public boolean isLoading() {
+        return mLoading;
+    }
+
+    @Override
+    public void deliverResult(List<Earthquake> data) {
+        mLoading = false;
+        super.deliverResult(data);
+    }
+
+    @Override
+    protected void onForceLoad() {
+        super.onForceLoad();
+        mLoading = true;
+    }
+
+    @Override
+    protected boolean onCancelLoad() {
+        mLoading = false;
+        return super.onCancelLoad();
+    }
+
+    @Override
+    protected void onStartLoading() {
+        //No forceLoad the Loader, the activity asks for each page when the list reaches its end
+    }
+
+    /**
+     * This is on a background thread.
+     */
+    @Override
+    public List<Earthquake> loadInBackground() {
+        List<Earthquake> pages = mPages;
+
+        // USGS offsets start at 1
+        int offset = mFetchedCount + 1;
+        String pageUrl = Uri.parse(mUrl).buildUpon()
+                .appendQueryParameter("offset", String.valueOf(offset))
+                .build()
+                .toString();
+        Log.i(LOG_TAG, "TEST: loadInBackground() called, fetching the page at offset " + offset);
+        EarthquakeSource primarySource = EarthquakeAggregator.sourcesFor(getContext()).get(0);
+        List<Earthquake> page = primarySource.fetchEarthquakeData(pageUrl);
+        if (page == null) {
+            // Keep the pages loaded so far, the next scroll to the end tries again
+            return pages;
+        }
+
+        // Events may have shifted between pages since the first one was fetched
+        Set<String> shownIds = new HashSet<>();
+        for (Earthquake earthquake : mFirstPage) {
+            shownIds.add(earthquake.getId());
+        }
+        for (Earthquake earthquake : pages) {
+            shownIds.add(earthquake.getId());
+        }
+        List<Earthquake> loaded = new ArrayList<>(pages.size() + page.size());
+        loaded.addAll(pages);
+        for (Earthquake earthquake : page) {
+            if (shownIds.add(earthquake.getId())) {
+                loaded.add(earthquake);
+            }
+        }
+
+        mFetchedCount += page.size();
+        mHasMore = page.size() >= mPageSize;
+        mPages = loaded;
+        return loaded;
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.android.quakereport;
+
+import android.net.Uri;
+
+import java.util.List;
+
+/**
+ * An {@link EarthquakeSource} is an FDSN-compatible event web service, such as USGS or another
+ * seismological agency, that the query built by the activity can be sent to.
+ */
+public class EarthquakeSource {
+
+    /**
+     * Stands for the event id in the event page URL template of a source
+     */
+    public static final String EVENT_ID_PLACEHOLDER = "{eventid}";
+
+    /**
+     * Short name of the agency, used in logs
+     */
+    private final String mName;
+
+    /**
+     * URL of the FDSN "query" endpoint of the agency
+     */
+    private final String mBaseUrl;
+
+    /**
+     * Decoder forced for this source, or null to keep the format asked by the query
+     */
+    private final EarthquakeDecoder mDecoder;
+
+    /**
+     * Constructs a new {@link EarthquakeSource}.
+     *
+     * @param name    is the short name of the agency
+     * @param baseUrl is the URL of the FDSN "query" endpoint of the agency
+     * @param decoder is the decoder to use for this source, or null to keep the format asked
+     *                by the query (only for services that support every format, like USGS)
+     */
+    public EarthquakeSource(String name, String baseUrl, EarthquakeDecoder decoder) {
+        mName = name;
+        mBaseUrl = baseUrl;
+        mDecoder = decoder;
+    }
+
+    /**
+     * Returns a source for an FDSN agency, queried in the "text" format every FDSN event
+     * service has to support. The FDSN standard has no human-readable event page, so events
+     * only link to one if the agency's page URL is given.
+     *
+     * @param eventPageUrlTemplate is the URL of the web page of an event, with
+     *                             {@link #EVENT_ID_PLACEHOLDER} where the event id goes, or null
+     *                             to leave the URL of the events empty
+     */
+    public static EarthquakeSource fdsn(String name, String baseUrl, String eventPageUrlTemplate) {
+        return new EarthquakeSource(name, baseUrl, DelimitedTextDecoder.text(eventPageUrlTemplate));
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Returns the request URL for this source, carrying over every parameter of the query.
+     */
+    public String buildUrl(String requestUrl) {
+        Uri query = Uri.parse(requestUrl);
+        Uri.Builder builder = Uri.parse(mBaseUrl).buildUpon();
+        for (String name : query.getQueryParameterNames()) {
+            if (mDecoder != null && "format".equals(name)) {
+                continue;
+            }
+            List<String> values = query.getQueryParameters(name);
+            for (String value : values) {
+                builder.appendQueryParameter(name, value);
+            }
+        }
+        if (mDecoder != null) {
+            builder.appendQueryParameter("format", mDecoder.getFormat());
+        }
+        return builder.build().toString();
+    }
+
+    /**
+     * Performs the query against this source. This is on a background thread.
+     */
+    public List<Earthquake> fetchEarthquakeData(String requestUrl) {
+        String url = buildUrl(requestUrl);
+        if (mDecoder == null) {
+            return QueryUtils.fetchEarthquakeData(url);
+        }
+        return QueryUtils.fetchEarthquakeData(url, mDecoder);
+    }
+}
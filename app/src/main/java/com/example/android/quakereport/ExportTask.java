@@ -0,0 +1,177 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.os.AsyncTask;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Exports the earthquakes of the local store to a file in the background, reporting progress
+ * after each batch and stopping early when cancelled.
+ */
+public class ExportTask extends AsyncTask<Void, Integer, File> {
+
+    /**
+     * Tag for log messages
+     */
+    private static final String LOG_TAG = ExportTask.class.getSimpleName();
+
+    /**
+     * Directory of the exported files, inside the app cache directory and shared
+     * through the FileProvider
+     */
+    public static final String EXPORT_DIRECTORY = "exports";
+
+    /**
+     * Older exports are deleted when a new one starts; newer ones may still be read by the
+     * app they were shared with
+     */
+    private static final long MAX_EXPORT_AGE_MILLIS = 60 * 60 * 1000;
+
+    /**
+     * Receives the progress and the result of the export on the main thread.
+     */
+    public interface Listener {
+        void onExportProgress(int exported, int total);
+
+        void onExportFinished(File file);
+
+        void onExportCancelled();
+    }
+
+    private final Context mContext;
+
+    private final EarthquakeExporter.Format mFormat;
+
+    /**
+     * Listener of the activity currently showing the export, or null between the instances
+     * of a configuration change; only touched on the main thread
+     */
+    private Listener mListener;
+
+    /**
+     * Last progress published, replayed to a new listener
+     */
+    private int mExported;
+    private int mTotal;
+
+    /**
+     * Constructs a new {@link ExportTask}.
+     *
+     * @param context of the app
+     * @param format  is the format to export to
+     */
+    public ExportTask(Context context, EarthquakeExporter.Format format) {
+        mContext = context.getApplicationContext();
+        mFormat = format;
+    }
+
+    public EarthquakeExporter.Format getFormat() {
+        return mFormat;
+    }
+
+    /**
+     * Sets the listener to notify on the main thread, and replays the last progress to it.
+     */
+    public void setListener(Listener listener) {
+        mListener = listener;
+        if (listener != null && mTotal > 0) {
+            listener.onExportProgress(mExported, mTotal);
+        }
+    }
+
+    @Override
+    protected File doInBackground(Void... voids) {
+        File directory = new File(mContext.getCacheDir(), EXPORT_DIRECTORY);
+        if (!directory.exists() && !directory.mkdirs()) {
+            Log.e(LOG_TAG, "Problem creating the export directory");
+            return null;
+        }
+        deleteOldExports(directory);
+        String timestamp = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date());
+        File file = new File(directory, "earthquakes-" + timestamp + "." + mFormat.getExtension());
+
+        EarthquakeCache.Reader reader = EarthquakeCache.getInstance(mContext).openReader();
+        OutputStream outputStream = null;
+        int exported = -1;
+        try {
+            outputStream = new BufferedOutputStream(new FileOutputStream(file));
+            exported = new EarthquakeExporter(mFormat).export(reader, outputStream,
+                    new EarthquakeExporter.Progress() {
+                        @Override
+                        public void onProgress(int exported, int total) {
+                            publishProgress(exported, total);
+                        }
+
+                        @Override
+                        public boolean isCancelled() {
+                            return ExportTask.this.isCancelled();
+                        }
+                    });
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem exporting the earthquakes", e);
+        } finally {
+            reader.close();
+            if (outputStream != null) {
+                try {
+                    outputStream.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Problem closing the export file", e);
+                    exported = -1;
+                }
+            }
+        }
+
+        if (exported < 0) {
+            // Cancelled or failed: do not leave a truncated file behind
+            file.delete();
+            return null;
+        }
+        Log.i(LOG_TAG, "TEST: exported " + exported + " earthquakes to " + file);
+        return file;
+    }
+
+    private static void deleteOldExports(File directory) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long cutoffMillis = System.currentTimeMillis() - MAX_EXPORT_AGE_MILLIS;
+        for (File file : files) {
+            if (file.lastModified() < cutoffMillis && !file.delete()) {
+                Log.w(LOG_TAG, "Problem deleting the old export " + file);
+            }
+        }
+    }
+
+    @Override
+    protected void onProgressUpdate(Integer... values) {
+        mExported = values[0];
+        mTotal = values[1];
+        if (mListener != null) {
+            mListener.onExportProgress(mExported, mTotal);
+        }
+    }
+
+    @Override
+    protected void onPostExecute(File file) {
+        if (mListener != null) {
+            mListener.onExportFinished(file);
+        }
+    }
+
+    @Override
+    protected void onCancelled(File file) {
+        if (mListener != null) {
+            mListener.onExportCancelled();
+        }
+    }
+}
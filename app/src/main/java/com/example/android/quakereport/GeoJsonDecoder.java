@@ -0,0 +1,111 @@
+package com.example.android.quakereport;
+
+import android.text.TextUtils;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodes the USGS "geojson" format with {@link org.json}.
+ */
+public class GeoJsonDecoder implements EarthquakeDecoder {
+
+    /**
+     * Tag for the log messages
+     */
+    private static final String LOG_TAG = GeoJsonDecoder.class.getSimpleName();
+
+    @Override
+    public String getFormat() {
+        return "geojson";
+    }
+
+    @Override
+    public List<Earthquake> decode(InputStream inputStream) throws IOException {
+        return extractFeatureFromJson(QueryUtils.readFromStream(inputStream));
+    }
+
+    /**
+     * Return a list of {@link Earthquake} objects that has been built up from
+     * parsing the given JSON response.
+     */
+    private static List<Earthquake> extractFeatureFromJson(String earthquakeJSON) {
+        // If the JSON string is empty or null, then return early.
+        if (TextUtils.isEmpty(earthquakeJSON)) {
+            return null;
+        }
+
+        // Create an empty ArrayList that we can start adding earthquakes to
+        List<Earthquake> earthquakes = new ArrayList<>();
+
+        // Try to parse the JSON response string. If there's a problem with the way the JSON
+        // is formatted, a JSONException exception object will be thrown.
+        // Catch the exception so the app doesn't crash, and print the error message to the logs.
+        try {
+
+            // Create a JSONObject from the JSON response string
+            JSONObject baseJsonResponse = new JSONObject(earthquakeJSON);
+
+            // Extract the JSONArray associated with the key called "features",
+            // which represents a list of features (or earthquakes).
+            JSONArray earthquakeArray = baseJsonResponse.getJSONArray("features");
+
+            // For each earthquake in the earthquakeArray, create an {@link Earthquake} object
+            for (int i = 0; i < earthquakeArray.length(); i++) {
+
+                // Get a single earthquake at position i within the list of earthquakes
+                JSONObject currentEarthquake = earthquakeArray.getJSONObject(i);
+
+                // Extract the event id, which stays the same when the event is updated
+                String id = currentEarthquake.getString("id");
+
+                // For a given earthquake, extract the JSONObject associated with the
+                // key called "properties", which represents a list of all properties
+                // for that earthquake.
+                JSONObject properties = currentEarthquake.getJSONObject("properties");
+
+                // Extract the value for the key called "mag"
+                double magnitude = properties.getDouble("mag");
+
+                // Extract the value for the key called "place"
+                String location = properties.getString("place");
+
+                // Extract the value for the key called "time"
+                long time = properties.getLong("time");
+
+                // Extract the value for the key called "url"
+                String url = properties.getString("url");
+
+                // Extract the coordinates, which GeoJSON orders as [longitude, latitude, depth]
+                JSONArray coordinates = currentEarthquake.getJSONObject("geometry").getJSONArray("coordinates");
+                double longitude = coordinates.getDouble(0);
+                double latitude = coordinates.getDouble(1);
+                double depth = coordinates.getDouble(2);
+
+                // Create a new {@link Earthquake} object with the id, magnitude, location, time,
+                // url and coordinates from the JSON response.
+                Earthquake earthquake = new Earthquake(id, magnitude, location, time, url,
+                        latitude, longitude, depth);
+
+                // Add the new {@link Earthquake} to the list of earthquakes.
+                earthquakes.add(earthquake);
+            }
+
+        } catch (JSONException e) {
+            // If an error is thrown when executing any of the above statements in the "try" block,
+            // catch the exception here, so the app doesn't crash. Print a log message
+            // with the message from the exception.
+            Log.e(LOG_TAG, "Problem parsing the earthquake JSON results", e);
+        }
+
+        // Return the list of earthquakes
+        return earthquakes;
+    }
+}
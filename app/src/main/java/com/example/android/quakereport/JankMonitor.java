@@ -0,0 +1,383 @@
+package com.example.android.quakereport;
+
+import android.annotation.TargetApi;
+import android.app.Activity;
+import android.os.Build;
+import android.os.Debug;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.StrictMode;
+import android.os.strictmode.Violation;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.FrameMetrics;
+import android.view.Window;
+import android.view.animation.AnimationUtils;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures how smoothly an activity draws, from {@link #start()} to {@link #stop()}, and logs a
+ * summary of the session: the 50th, 95th and 99th percentile frame durations and the number
+ * of slow frames attributed to adapter binds, layout, garbage collection or something else.
+ * <p>
+ * Frame durations come from {@link FrameMetrics} on API 26+, and from the interval between
+ * {@link Choreographer} frames below that (where layout time is not available). Adapters
+ * report their bind time with {@link #recordBind(long)}, tagged with the vsync time of the
+ * frame being drawn, so it is matched with that frame's metrics even though they arrive a few
+ * frames later. Everything runs on the main thread.
+ */
+public final class JankMonitor {
+
+    /**
+     * Tag for log messages
+     */
+    private static final String LOG_TAG = JankMonitor.class.getSimpleName();
+
+    /**
+     * Frame durations are counted in buckets of one millisecond up to this value, and
+     * longer frames in the last bucket
+     */
+    private static final int MAX_TRACKED_MILLIS = 250;
+
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    /**
+     * Number of recent frames whose bind time is kept until their metrics arrive
+     */
+    private static final int BIND_FRAME_SLOTS = 8;
+
+    /**
+     * Main thread policy violations (disk or network access) reported since the watchdog
+     * was installed, available on API 28+
+     */
+    private static final AtomicInteger sViolationCount = new AtomicInteger();
+
+    /**
+     * Thread the violations are counted on, shared by every install of the watchdog
+     */
+    private static Executor sViolationExecutor;
+
+    /**
+     * True once the watchdog is installed on the main thread; only touched on the main thread
+     */
+    private static boolean sWatchdogInstalled;
+
+    private final Activity mActivity;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Duration of a frame at the refresh rate of the display
+     */
+    private final long mFrameBudgetNanos;
+
+    /**
+     * Number of frames of each duration, in milliseconds
+     */
+    private final int[] mHistogram = new int[MAX_TRACKED_MILLIS + 1];
+
+    private int mFrameCount;
+
+    /**
+     * Slow frames, by cause
+     */
+    private int mSlowBindFrames;
+    private int mSlowLayoutFrames;
+    private int mSlowGcFrames;
+    private int mSlowOtherFrames;
+
+    /**
+     * Whether frames are measured with {@link FrameMetrics}, which has their vsync time
+     */
+    private final boolean mUseFrameMetrics = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O;
+
+    /**
+     * Time spent binding adapter rows since the last frame was accounted, for the
+     * {@link Choreographer} intervals
+     */
+    private long mPendingBindNanos;
+
+    /**
+     * Vsync time, in milliseconds, and bind time of the recent frames, for {@link FrameMetrics}
+     */
+    private final long[] mBindFrameMillis = new long[BIND_FRAME_SLOTS];
+    private final long[] mBindFrameNanos = new long[BIND_FRAME_SLOTS];
+    private int mNextBindSlot;
+
+    /**
+     * Number of garbage collections when the last frame was accounted, or -1 if unknown
+     */
+    private long mLastGcCount;
+
+    private int mViolationCountAtStart;
+
+    private boolean mStarted;
+
+    /**
+     * Time of the previous {@link Choreographer} frame, or 0 before the first one
+     */
+    private long mLastFrameTimeNanos;
+
+    private Choreographer.FrameCallback mFrameCallback;
+
+    private Window.OnFrameMetricsAvailableListener mFrameMetricsListener;
+
+    /**
+     * Constructs a new {@link JankMonitor} for the windows of the given activity.
+     */
+    public JankMonitor(Activity activity) {
+        mActivity = activity;
+        float refreshRate = activity.getWindowManager().getDefaultDisplay().getRefreshRate();
+        mFrameBudgetNanos = (long) (1000000000L / (refreshRate > 1 ? refreshRate : 60));
+    }
+
+    /**
+     * Starts a new session.
+     */
+    public void start() {
+        if (mStarted) {
+            return;
+        }
+        mStarted = true;
+        reset();
+        if (mUseFrameMetrics) {
+            startFrameMetrics();
+        } else {
+            startChoreographer();
+        }
+    }
+
+    /**
+     * Ends the session and logs its summary.
+     */
+    public void stop() {
+        if (!mStarted) {
+            return;
+        }
+        mStarted = false;
+        if (mUseFrameMetrics) {
+            stopFrameMetrics();
+        } else {
+            Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+        }
+        logSummary();
+    }
+
+    /**
+     * Reports the time the adapter spent binding one row.
+     */
+    public void recordBind(long nanos) {
+        if (!mUseFrameMetrics) {
+            // The next Choreographer frame accounts the frame this bind is part of
+            mPendingBindNanos += nanos;
+            return;
+        }
+        // While a frame is drawn, the animation clock is locked to its vsync time
+        long frameMillis = AnimationUtils.currentAnimationTimeMillis();
+        for (int i = 0; i < BIND_FRAME_SLOTS; i++) {
+            if (mBindFrameMillis[i] == frameMillis) {
+                mBindFrameNanos[i] += nanos;
+                return;
+            }
+        }
+        // Reuses the slot of the oldest frame, whose metrics have long arrived
+        mBindFrameMillis[mNextBindSlot] = frameMillis;
+        mBindFrameNanos[mNextBindSlot] = nanos;
+        mNextBindSlot = (mNextBindSlot + 1) % BIND_FRAME_SLOTS;
+    }
+
+    /**
+     * Returns and forgets the bind time of the frame drawn at the given vsync time.
+     */
+    private long takeBindNanos(long vsyncNanos) {
+        long frameMillis = vsyncNanos / NANOS_PER_MILLI;
+        for (int i = 0; i < BIND_FRAME_SLOTS; i++) {
+            if (mBindFrameMillis[i] == frameMillis) {
+                long nanos = mBindFrameNanos[i];
+                mBindFrameMillis[i] = 0;
+                mBindFrameNanos[i] = 0;
+                return nanos;
+            }
+        }
+        return 0;
+    }
+
+    private void reset() {
+        for (int i = 0; i < mHistogram.length; i++) {
+            mHistogram[i] = 0;
+        }
+        mFrameCount = 0;
+        mSlowBindFrames = 0;
+        mSlowLayoutFrames = 0;
+        mSlowGcFrames = 0;
+        mSlowOtherFrames = 0;
+        mPendingBindNanos = 0;
+        Arrays.fill(mBindFrameMillis, 0);
+        Arrays.fill(mBindFrameNanos, 0);
+        mLastFrameTimeNanos = 0;
+        mLastGcCount = gcCount();
+        mViolationCountAtStart = sViolationCount.get();
+    }
+
+    @TargetApi(Build.VERSION_CODES.O)
+    private void startFrameMetrics() {
+        if (mFrameMetricsListener == null) {
+            mFrameMetricsListener = new Window.OnFrameMetricsAvailableListener() {
+                @Override
+                public void onFrameMetricsAvailable(Window window, FrameMetrics frameMetrics, int dropCount) {
+                    if (!mStarted || frameMetrics.getMetric(FrameMetrics.FIRST_DRAW_FRAME) == 1) {
+                        // The first frame of a window inflates everything and is not jank
+                        return;
+                    }
+                    recordFrame(frameMetrics.getMetric(FrameMetrics.TOTAL_DURATION),
+                            frameMetrics.getMetric(FrameMetrics.LAYOUT_MEASURE_DURATION),
+                            takeBindNanos(frameMetrics.getMetric(FrameMetrics.VSYNC_TIMESTAMP)));
+                }
+            };
+        }
+        // Delivered after the frame is rendered, often a few frames late; the bind time is
+        // matched by vsync time, and the handler keeps it on the main thread with the binds
+        mActivity.getWindow().addOnFrameMetricsAvailableListener(mFrameMetricsListener, mHandler);
+    }
+
+    @TargetApi(Build.VERSION_CODES.O)
+    private void stopFrameMetrics() {
+        try {
+            mActivity.getWindow().removeOnFrameMetricsAvailableListener(mFrameMetricsListener);
+        } catch (IllegalArgumentException e) {
+            // The window was never attached, so the listener was not added
+        }
+    }
+
+    private void startChoreographer() {
+        if (mFrameCallback == null) {
+            mFrameCallback = new Choreographer.FrameCallback() {
+                @Override
+                public void doFrame(long frameTimeNanos) {
+                    if (mLastFrameTimeNanos != 0) {
+                        // The interval covers the work of the previous frame, binds included;
+                        // layout is not measured
+                        recordFrame(frameTimeNanos - mLastFrameTimeNanos, 0, mPendingBindNanos);
+                    }
+                    mPendingBindNanos = 0;
+                    mLastFrameTimeNanos = frameTimeNanos;
+                    Choreographer.getInstance().postFrameCallback(this);
+                }
+            };
+        }
+        Choreographer.getInstance().postFrameCallback(mFrameCallback);
+    }
+
+    /**
+     * Accounts one frame, and attributes it to its main cause if it missed the frame budget.
+     */
+    private void recordFrame(long durationNanos, long layoutNanos, long bindNanos) {
+        mFrameCount++;
+        mHistogram[(int) Math.min(MAX_TRACKED_MILLIS, durationNanos / NANOS_PER_MILLI)]++;
+
+        long gcCount = gcCount();
+        boolean collected = mLastGcCount >= 0 && gcCount > mLastGcCount;
+        mLastGcCount = gcCount;
+
+        // Choreographer intervals include the wait for vsync, so only skipped vsyncs are slow
+        long budget = mUseFrameMetrics ? mFrameBudgetNanos : mFrameBudgetNanos * 3 / 2;
+        if (durationNanos <= budget) {
+            return;
+        }
+        // ListView binds rows while it lays them out, so binding is part of the layout time
+        long budgetShare = mFrameBudgetNanos / 2;
+        if (bindNanos >= budgetShare) {
+            mSlowBindFrames++;
+        } else if (layoutNanos - bindNanos >= budgetShare) {
+            mSlowLayoutFrames++;
+        } else if (collected) {
+            mSlowGcFrames++;
+        } else {
+            mSlowOtherFrames++;
+        }
+    }
+
+    private void logSummary() {
+        int slowFrames = mSlowBindFrames + mSlowLayoutFrames + mSlowGcFrames + mSlowOtherFrames;
+        Log.i(LOG_TAG, "TEST: " + mActivity.getClass().getSimpleName() + " session: "
+                + mFrameCount + " frames, p50 " + percentile(50) + " ms, p95 " + percentile(95)
+                + " ms, p99 " + percentile(99) + " ms, " + slowFrames + " slow (binds "
+                + mSlowBindFrames + ", layout " + mSlowLayoutFrames + ", GC " + mSlowGcFrames
+                + ", other " + mSlowOtherFrames + "), main thread I/O violations "
+                + (sViolationCount.get() - mViolationCountAtStart));
+    }
+
+    /**
+     * Returns the given percentile of the frame durations of the session, in milliseconds.
+     */
+    private int percentile(int percent) {
+        if (mFrameCount == 0) {
+            return 0;
+        }
+        // Rank of the percentile, rounded up
+        int rank = (int) (((long) mFrameCount * percent + 99) / 100);
+        int seen = 0;
+        for (int millis = 0; millis < mHistogram.length; millis++) {
+            seen += mHistogram[millis];
+            if (seen >= rank) {
+                return millis;
+            }
+        }
+        return MAX_TRACKED_MILLIS;
+    }
+
+    /**
+     * Returns the number of garbage collections so far, or -1 if it is not available.
+     */
+    private static long gcCount() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            String count = Debug.getRuntimeStat("art.gc.gc-count");
+            if (count != null) {
+                try {
+                    return Long.parseLong(count);
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Makes disk and network access on the main thread visible: each one is logged with its
+     * stack trace and, on API 28+, counted in the session summaries. For debug builds only.
+     * Installed once per process; later calls, e.g. from a recreated activity, do nothing.
+     */
+    public static void installMainThreadWatchdog() {
+        if (sWatchdogInstalled) {
+            return;
+        }
+        sWatchdogInstalled = true;
+        StrictMode.ThreadPolicy.Builder builder = new StrictMode.ThreadPolicy.Builder()
+                .detectDiskReads()
+                .detectDiskWrites()
+                .detectNetwork()
+                .penaltyLog();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            addViolationListener(builder);
+        }
+        StrictMode.setThreadPolicy(builder.build());
+    }
+
+    @TargetApi(Build.VERSION_CODES.P)
+    private static void addViolationListener(StrictMode.ThreadPolicy.Builder builder) {
+        if (sViolationExecutor == null) {
+            sViolationExecutor = Executors.newSingleThreadExecutor();
+        }
+        builder.penaltyListener(sViolationExecutor, new StrictMode.OnThreadViolationListener() {
+            @Override
+            public void onThreadViolation(Violation violation) {
+                sViolationCount.incrementAndGet();
+            }
+        });
+    }
+}
@@ -1,15 +1,8 @@
 package com.example.android.quakereport;
 
-import android.content.Context;
-import android.net.ConnectivityManager;
-import android.net.NetworkInfo;
-import android.text.TextUtils;
+import android.net.Uri;
 import android.util.Log;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
@@ -18,9 +11,9 @@ import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.Charset;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 
@@ -34,6 +27,18 @@ public final class QueryUtils {
      */
     private static final String LOG_TAG = QueryUtils.class.getSimpleName();
 
+    /**
+     * URL of the USGS event web service, used to look up the details of a single event
+     */
+    private static final String USGS_DETAIL_URL = "https://earthquake.usgs.gov/fdsnws/event/1/query";
+
+    /**
+     * Reads the body of a successful response.
+     */
+    private interface ResponseReader<T> {
+        T read(InputStream inputStream) throws IOException;
+    }
+
     /**
      * Create a private constructor because no one should ever create a {@link QueryUtils} object.
      * This class is only meant to hold static variables and methods, which can be accessed
@@ -44,9 +49,30 @@ public final class QueryUtils {
     }
 
     /**
-     * Query the USGS dataset and return a list of {@link Earthquake} objects.
+     * Returns the decoder for the given value of the "format" query parameter.
+     * Unknown or missing formats fall back to GeoJSON.
+     */
+    public static EarthquakeDecoder decoderFor(String format) {
+        if ("csv".equals(format)) {
+            return DelimitedTextDecoder.csv();
+        } else if ("text".equals(format)) {
+            return DelimitedTextDecoder.text();
+        }
+        return new GeoJsonDecoder();
+    }
+
+    /**
+     * Query the USGS dataset and return a list of {@link Earthquake} objects, decoded
+     * according to the "format" query parameter of the request.
      */
     public static List<Earthquake> fetchEarthquakeData(String requestUrl) {
+        return fetchEarthquakeData(requestUrl, decoderFor(Uri.parse(requestUrl).getQueryParameter("format")));
+    }
+
+    /**
+     * Query the USGS dataset and return a list of {@link Earthquake} objects.
+     */
+    public static List<Earthquake> fetchEarthquakeData(String requestUrl, final EarthquakeDecoder decoder) {
 
         //We are forcing the background thread to pause execution and wait for 2 seconds (which is 2000 milliseconds),
         // before proceeding to execute the rest of lines of code in this method.
@@ -62,18 +88,82 @@ public final class QueryUtils {
         // Create URL object
         URL url = createUrl(requestUrl);
 
-        // Perform HTTP request to the URL and receive a JSON response back
+        // Perform HTTP request to the URL and decode the response into a list of {@link Earthquake}s
+        List<Earthquake> earthquakes = null;
+        try {
+            earthquakes = makeHttpRequest(url, "earthquake " + decoder.getFormat(), new ResponseReader<List<Earthquake>>() {
+                @Override
+                public List<Earthquake> read(InputStream inputStream) throws IOException {
+                    return decoder.decode(inputStream);
+                }
+            });
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem making the HTTP request.", e);
+        }
+
+        // Return the list of {@link Earthquake}s
+        return earthquakes;
+    }
+
+    /**
+     * Query the USGS detail GeoJSON of a single event and return its {@link EarthquakeDetail},
+     * or null if it could not be loaded.
+     */
+    public static EarthquakeDetail fetchEarthquakeDetail(String eventId) {
+        Log.i(LOG_TAG, "TEST: fetchEarthquakeDetail() called for " + eventId);
+        URL url = createUrl(Uri.parse(USGS_DETAIL_URL).buildUpon()
+                .appendQueryParameter("eventid", eventId)
+                .appendQueryParameter("format", "geojson")
+                .build()
+                .toString());
+
         String jsonResponse = null;
         try {
-            jsonResponse = makeHttpRequest(url);
+            jsonResponse = makeHttpRequest(url, "earthquake detail", new ResponseReader<String>() {
+                @Override
+                public String read(InputStream inputStream) throws IOException {
+                    return readFromStream(inputStream);
+                }
+            });
         } catch (IOException e) {
             Log.e(LOG_TAG, "Problem making the HTTP request.", e);
         }
+        return EarthquakeDetail.fromJson(jsonResponse);
+    }
 
-        // Extract relevant fields from the JSON response and create a list of {@link Earthquake}s
-        List<Earthquake> earthquakes = extractFeatureFromJson(jsonResponse);
+    /**
+     * Sorts the earthquakes the way the "orderby" parameter of the request asks USGS to, and
+     * truncates them to its "limit" parameter. Used when results are combined on the device.
+     */
+    public static List<Earthquake> applyOrderAndLimit(List<Earthquake> earthquakes, String requestUrl) {
+        Uri uri = Uri.parse(requestUrl);
+        if ("time".equals(uri.getQueryParameter("orderby"))) {
+            Collections.sort(earthquakes, new Comparator<Earthquake>() {
+                @Override
+                public int compare(Earthquake a, Earthquake b) {
+                    return b.getTimeInMilliseconds().compareTo(a.getTimeInMilliseconds());
+                }
+            });
+        } else {
+            Collections.sort(earthquakes, new Comparator<Earthquake>() {
+                @Override
+                public int compare(Earthquake a, Earthquake b) {
+                    return Double.compare(b.getMagnitude(), a.getMagnitude());
+                }
+            });
+        }
 
-        // Return the list of {@link Earthquake}s
+        String limit = uri.getQueryParameter("limit");
+        if (limit != null) {
+            try {
+                int max = Integer.parseInt(limit);
+                if (earthquakes.size() > max) {
+                    earthquakes = new ArrayList<>(earthquakes.subList(0, max));
+                }
+            } catch (NumberFormatException e) {
+                Log.e(LOG_TAG, "Problem parsing the query limit " + limit, e);
+            }
+        }
         return earthquakes;
     }
 
@@ -91,14 +181,14 @@ public final class QueryUtils {
     }
 
     /**
-     * Make an HTTP request to the given URL and return a String as the response.
+     * Make an HTTP request to the given URL and return the response read by the reader.
      */
-    private static String makeHttpRequest(URL url) throws IOException {
-        String jsonResponse = "";
+    private static <T> T makeHttpRequest(URL url, String description, ResponseReader<T> reader) throws IOException {
+        T response = null;
 
         // If the URL is null, then return early.
         if (url == null) {
-            return jsonResponse;
+            return response;
         }
 
         HttpURLConnection urlConnection = null;
@@ -114,31 +204,31 @@ public final class QueryUtils {
             // then read the input stream and parse the response.
             if (urlConnection.getResponseCode() == 200) {
                 inputStream = urlConnection.getInputStream();
-                jsonResponse = readFromStream(inputStream);
+                response = reader.read(inputStream);
             } else {
                 Log.e(LOG_TAG, "Error response code: " + urlConnection.getResponseCode());
             }
         } catch (IOException e) {
-            Log.e(LOG_TAG, "Problem retrieving the earthquake JSON results.", e);
+            Log.e(LOG_TAG, "Problem retrieving the " + description + " results.", e);
         } finally {
             if (urlConnection != null) {
                 urlConnection.disconnect();
             }
             if (inputStream != null) {
                 // Closing the input stream could throw an IOException, which is why
-                // the makeHttpRequest(URL url) method signature specifies than an IOException
+                // the makeHttpRequest(URL url, String description, ResponseReader<T> reader) method signature specifies than an IOException
                 // could be thrown.
                 inputStream.close();
             }
         }
-        return jsonResponse;
+        return response;
     }
 
     /**
      * Convert the {@link InputStream} into a String which contains the
      * whole JSON response from the server.
      */
-    private static String readFromStream(InputStream inputStream) throws IOException {
+    static String readFromStream(InputStream inputStream) throws IOException {
         StringBuilder output = new StringBuilder();
         if (inputStream != null) {
             InputStreamReader inputStreamReader = new InputStreamReader(inputStream, Charset.forName("UTF-8"));
@@ -152,80 +242,6 @@ public final class QueryUtils {
         return output.toString();
     }
 
-    /**
-     * Return a list of {@link Earthquake} objects that has been built up from
-     * parsing the given JSON response.
-     */
-    private static List<Earthquake> extractFeatureFromJson(String earthquakeJSON) {
-        // If the JSON string is empty or null, then return early.
-        if (TextUtils.isEmpty(earthquakeJSON)) {
-            return null;
-        }
-
-        // Create an empty ArrayList that we can start adding earthquakes to
-        List<Earthquake> earthquakes = new ArrayList<>();
-
-        // Try to parse the JSON response string. If there's a problem with the way the JSON
-        // is formatted, a JSONException exception object will be thrown.
-        // Catch the exception so the app doesn't crash, and print the error message to the logs.
-        try {
-
-            // Create a JSONObject from the JSON response string
-            JSONObject baseJsonResponse = new JSONObject(earthquakeJSON);
-
-            // Extract the JSONArray associated with the key called "features",
-            // which represents a list of features (or earthquakes).
-            JSONArray earthquakeArray = baseJsonResponse.getJSONArray("features");
-
-            // For each earthquake in the earthquakeArray, create an {@link Earthquake} object
-            for (int i = 0; i < earthquakeArray.length(); i++) {
-
-                // Get a single earthquake at position i within the list of earthquakes
-                JSONObject currentEarthquake = earthquakeArray.getJSONObject(i);
-
-                // For a given earthquake, extract the JSONObject associated with the
-                // key called "properties", which represents a list of all properties
-                // for that earthquake.
-                JSONObject properties = currentEarthquake.getJSONObject("properties");
-
-                // Extract the value for the key called "mag"
-                double magnitude = properties.getDouble("mag");
-
-                // Extract the value for the key called "place"
-                String location = properties.getString("place");
-
-                // Extract the value for the key called "time"
-                long time = properties.getLong("time");
-
-                // Extract the value for the key called "url"
-                String url = properties.getString("url");
-
-                // Create a new {@link Earthquake} object with the magnitude, location, time,
-                // and url from the JSON response.
-                Earthquake earthquake = new Earthquake(magnitude, location, time, url);
-
-                // Add the new {@link Earthquake} to the list of earthquakes.
-                earthquakes.add(earthquake);
-            }
-
-        } catch (JSONException e) {
-            // If an error is thrown when executing any of the above statements in the "try" block,
-            // catch the exception here, so the app doesn't crash. Print a log message
-            // with the message from the exception.
-            Log.e("QueryUtils", "Problem parsing the earthquake JSON results", e);
-        }
-
-        // Return the list of earthquakes
-        return earthquakes;
-    }
-
-
-    public static boolean isNetworkActive(Context context) {
-        // Check for connectivity status
-        ConnectivityManager connMgr = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
-        NetworkInfo networkInfo = connMgr.getActiveNetworkInfo();
-        return networkInfo != null && networkInfo.isConnectedOrConnecting();
-    }
 
 
 }
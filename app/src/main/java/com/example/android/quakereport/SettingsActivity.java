@@ -29,6 +29,15 @@ public class SettingsActivity extends AppCompatActivity {
 
             Preference orderBy = findPreference(getString(R.string.settings_order_by_key));
             bindPreferenceSummaryToValue(orderBy);
+
+            bindPreferenceSummaryToValue(findPreference(getString(R.string.settings_page_size_key)));
+
+            bindPreferenceSummaryToValue(findPreference(getString(R.string.settings_alert_worldwide_magnitude_key)));
+            bindPreferenceSummaryToValue(findPreference(getString(R.string.settings_alert_nearby_magnitude_key)));
+            bindPreferenceSummaryToValue(findPreference(getString(R.string.settings_alert_radius_key)));
+            bindPreferenceSummaryToValue(findPreference(getString(R.string.settings_home_latitude_key)));
+            bindPreferenceSummaryToValue(findPreference(getString(R.string.settings_home_longitude_key)));
+            bindPreferenceSummaryToValue(findPreference(getString(R.string.settings_extra_sources_key)));
         }
 
         @Override
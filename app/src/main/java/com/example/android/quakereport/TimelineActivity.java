@@ -0,0 +1,127 @@
+package com.example.android.quakereport;
+
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.os.Bundle;
+import android.preference.PreferenceManager;
+import android.util.Log;
+import android.view.View;
+import android.widget.TextView;
+
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.loader.app.LoaderManager;
+import androidx.loader.content.Loader;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Shows the magnitude of the earthquakes of the last months on a zoomable timeline.
+ */
+public class TimelineActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<List<Earthquake>> {
+
+    public static final String LOG_TAG = TimelineActivity.class.getName();
+
+    /**
+     * Constant value for the timeline loader ID.
+     */
+    private static final int TIMELINE_LOADER_ID = 1;
+
+    /**
+     * URL for earthquake data from the USGS dataset
+     */
+    private static final String USGS_REQUEST_URL = "https://earthquake.usgs.gov/fdsnws/event/1/query";
+
+    /**
+     * How far back the timeline goes, in days
+     */
+    private static final int HISTORY_DAYS = 90;
+
+    /**
+     * Largest number of events USGS returns for a single query
+     */
+    private static final int MAX_EVENTS = 20000;
+
+    /**
+     * A history older than this is fetched again when the timeline opens
+     */
+    private static final long STALE_AFTER_MILLIS = 30 * 60 * 1000;
+
+    private TimelineView mTimelineView;
+
+    private TextView mEmptyStateTextView;
+
+    private View mLoadingIndicator;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.timeline_activity);
+
+        mTimelineView = findViewById(R.id.timeline);
+        mEmptyStateTextView = findViewById(R.id.timeline_empty_view);
+        mLoadingIndicator = findViewById(R.id.timeline_loading_indicator);
+
+        // A loader retained across a configuration change delivers its history again
+        EarthquakeLoader loader = (EarthquakeLoader) LoaderManager.getInstance(this)
+                .initLoader(TIMELINE_LOADER_ID, null, this);
+        if (!loader.isStale(STALE_AFTER_MILLIS) || loader.isLoading()) {
+            return;
+        }
+
+        // Offline, the loader only reads the cached history
+        ConnectivityMonitor.FetchStrategy fetchStrategy = ConnectivityMonitor.getCurrentFetchStrategy(this);
+        if (fetchStrategy == ConnectivityMonitor.FetchStrategy.NONE && loader.getDeliveredResult() != null) {
+            return;
+        }
+        loader.setFetchStrategy(fetchStrategy);
+        loader.forceLoad();
+    }
+
+    @Override
+    public Loader<List<Earthquake>> onCreateLoader(int id, Bundle args) {
+        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(this);
+        String minMagnitude = sharedPrefs.getString(
+                getString(R.string.settings_min_magnitude_key),
+                getString(R.string.settings_min_magnitude_default));
+
+        // Start of the history, rounded to the day so the query (and its cache key) is stable
+        SimpleDateFormat dayFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
+        dayFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        long startMillis = System.currentTimeMillis() - HISTORY_DAYS * 24L * 60 * 60 * 1000;
+
+        // The CSV format is much smaller than GeoJSON for thousands of events
+        Uri.Builder uriBuilder = Uri.parse(USGS_REQUEST_URL).buildUpon();
+        uriBuilder.appendQueryParameter("format", DelimitedTextDecoder.csv().getFormat());
+        uriBuilder.appendQueryParameter("starttime", dayFormat.format(new Date(startMillis)));
+        uriBuilder.appendQueryParameter("limit", String.valueOf(MAX_EVENTS));
+        uriBuilder.appendQueryParameter("minmagnitude", minMagnitude);
+        uriBuilder.appendQueryParameter("orderby", "time");
+
+        EarthquakeLoader loader = new EarthquakeLoader(this, uriBuilder.toString());
+        // The history is not news, it must not trigger alerts
+        loader.setAlertsEnabled(false);
+        loader.setSectionIndexEnabled(false);
+        return loader;
+    }
+
+    @Override
+    public void onLoadFinished(Loader<List<Earthquake>> loader, List<Earthquake> earthquakes) {
+        Log.i(LOG_TAG, "TEST: timeline onLoadFinished() called...");
+        mLoadingIndicator.setVisibility(View.GONE);
+        if (earthquakes == null || earthquakes.isEmpty()) {
+            mEmptyStateTextView.setText(R.string.no_earthquakes);
+            mEmptyStateTextView.setVisibility(View.VISIBLE);
+            return;
+        }
+        mEmptyStateTextView.setVisibility(View.GONE);
+        mTimelineView.setEarthquakes(earthquakes);
+    }
+
+    @Override
+    public void onLoaderReset(Loader<List<Earthquake>> loader) {
+    }
+}
@@ -0,0 +1,235 @@
+package com.example.android.quakereport;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Magnitude-over-time points of a (possibly very large) set of earthquakes, with
+ * Largest-Triangle-Three-Buckets downsampling for drawing.
+ * <p>
+ * Besides the full resolution, coarser levels are built once (each a quarter of the previous
+ * one) and cached, so a zoomed-out viewport downsamples from a few thousand points instead
+ * of the whole history. Building a series and downsampling it are meant to run off the UI
+ * thread; the class has no Android dependencies.
+ */
+public class TimelineSeries {
+
+    /**
+     * Each level keeps a quarter of the points of the previous one
+     */
+    private static final int LEVEL_FACTOR = 4;
+
+    /**
+     * Levels are not built below this number of points
+     */
+    private static final int MIN_LEVEL_SIZE = 2048;
+
+    /**
+     * Times in milliseconds since the first event, sorted
+     */
+    private final double[] mTimes;
+
+    /**
+     * Magnitudes, in the order of {@link #mTimes}
+     */
+    private final double[] mMagnitudes;
+
+    /**
+     * Time of the first event, in milliseconds since the Epoch
+     */
+    private final long mStartTime;
+
+    private final double mMinMagnitude;
+
+    private final double mMaxMagnitude;
+
+    /**
+     * Indices kept at each resolution level; level 0 is every point
+     */
+    private final List<int[]> mLevels = new ArrayList<>();
+
+    /**
+     * Downsampled points, with times in milliseconds since the Epoch.
+     */
+    public static final class Points {
+
+        public final long[] times;
+
+        public final double[] magnitudes;
+
+        Points(long[] times, double[] magnitudes) {
+            this.times = times;
+            this.magnitudes = magnitudes;
+        }
+    }
+
+    /**
+     * Builds the series from the earthquakes, in any order.
+     */
+    public TimelineSeries(List<Earthquake> earthquakes) {
+        Earthquake[] sorted = earthquakes.toArray(new Earthquake[earthquakes.size()]);
+        Arrays.sort(sorted, new Comparator<Earthquake>() {
+            @Override
+            public int compare(Earthquake a, Earthquake b) {
+                return a.getTimeInMilliseconds().compareTo(b.getTimeInMilliseconds());
+            }
+        });
+
+        int count = sorted.length;
+        mStartTime = count > 0 ? sorted[0].getTimeInMilliseconds() : 0;
+        mTimes = new double[count];
+        mMagnitudes = new double[count];
+        double minMagnitude = Double.POSITIVE_INFINITY;
+        double maxMagnitude = Double.NEGATIVE_INFINITY;
+        int[] all = new int[count];
+        for (int i = 0; i < count; i++) {
+            mTimes[i] = sorted[i].getTimeInMilliseconds() - mStartTime;
+            mMagnitudes[i] = sorted[i].getMagnitude();
+            minMagnitude = Math.min(minMagnitude, mMagnitudes[i]);
+            maxMagnitude = Math.max(maxMagnitude, mMagnitudes[i]);
+            all[i] = i;
+        }
+        mMinMagnitude = count > 0 ? minMagnitude : 0;
+        mMaxMagnitude = count > 0 ? maxMagnitude : 0;
+        mLevels.add(all);
+    }
+
+    public int size() {
+        return mTimes.length;
+    }
+
+    public long getStartTime() {
+        return mStartTime;
+    }
+
+    public long getEndTime() {
+        return mTimes.length > 0 ? mStartTime + (long) mTimes[mTimes.length - 1] : mStartTime;
+    }
+
+    public double getMinMagnitude() {
+        return mMinMagnitude;
+    }
+
+    public double getMaxMagnitude() {
+        return mMaxMagnitude;
+    }
+
+    /**
+     * Returns at most about {@code maxPoints} points representing the events between the two
+     * times (plus one point on each side, so lines reach the edges of the viewport).
+     */
+    public Points downsample(long fromTime, long toTime, int maxPoints) {
+        int[] level = levelFor(fromTime, toTime, maxPoints);
+        int from = Math.max(0, lowerBound(level, fromTime - mStartTime) - 1);
+        int to = Math.min(level.length, lowerBound(level, toTime - mStartTime + 1) + 1);
+
+        int[] indices = largestTriangleThreeBuckets(level, from, to, maxPoints);
+        long[] times = new long[indices.length];
+        double[] magnitudes = new double[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            times[i] = mStartTime + (long) mTimes[indices[i]];
+            magnitudes[i] = mMagnitudes[indices[i]];
+        }
+        return new Points(times, magnitudes);
+    }
+
+    /**
+     * Returns the coarsest cached level that still has at least {@code maxPoints} points in
+     * the range, building coarser levels the first time they are needed.
+     */
+    private synchronized int[] levelFor(long fromTime, long toTime, int maxPoints) {
+        int[] chosen = mLevels.get(0);
+        for (int depth = 1; ; depth++) {
+            if (depth == mLevels.size()) {
+                int[] previous = mLevels.get(depth - 1);
+                if (previous.length / LEVEL_FACTOR < MIN_LEVEL_SIZE) {
+                    return chosen;
+                }
+                mLevels.add(largestTriangleThreeBuckets(previous, 0, previous.length,
+                        previous.length / LEVEL_FACTOR));
+            }
+            int[] level = mLevels.get(depth);
+            int inRange = lowerBound(level, toTime - mStartTime + 1) - lowerBound(level, fromTime - mStartTime);
+            if (inRange < maxPoints) {
+                return chosen;
+            }
+            chosen = level;
+        }
+    }
+
+    /**
+     * Returns the first position in the level whose time is not before the given time.
+     */
+    private int lowerBound(int[] level, double time) {
+        int low = 0;
+        int high = level.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mTimes[level[mid]] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Largest-Triangle-Three-Buckets: keeps the first and last points, splits the others into
+     * {@code threshold - 2} buckets and keeps from each bucket the point forming the largest
+     * triangle with the previously kept point and the average of the next bucket.
+     *
+     * @return the indices (into the full resolution arrays) of the kept points
+     */
+    private int[] largestTriangleThreeBuckets(int[] source, int from, int to, int threshold) {
+        int count = to - from;
+        if (threshold >= count || threshold < 3) {
+            return Arrays.copyOfRange(source, from, to);
+        }
+
+        int[] sampled = new int[threshold];
+        int sampledIndex = 0;
+        double every = (double) (count - 2) / (threshold - 2);
+
+        int a = from;
+        sampled[sampledIndex++] = source[a];
+
+        for (int i = 0; i < threshold - 2; i++) {
+            // Average of the next bucket
+            int avgStart = from + (int) Math.floor((i + 1) * every) + 1;
+            int avgEnd = Math.min(from + (int) Math.floor((i + 2) * every) + 1, to);
+            double avgTime = 0;
+            double avgMagnitude = 0;
+            for (int j = avgStart; j < avgEnd; j++) {
+                avgTime += mTimes[source[j]];
+                avgMagnitude += mMagnitudes[source[j]];
+            }
+            int avgLength = Math.max(1, avgEnd - avgStart);
+            avgTime /= avgLength;
+            avgMagnitude /= avgLength;
+
+            // Point of the current bucket with the largest triangle
+            int rangeStart = from + (int) Math.floor(i * every) + 1;
+            int rangeEnd = from + (int) Math.floor((i + 1) * every) + 1;
+            double aTime = mTimes[source[a]];
+            double aMagnitude = mMagnitudes[source[a]];
+            double maxArea = -1;
+            int next = rangeStart;
+            for (int j = rangeStart; j < rangeEnd; j++) {
+                double area = Math.abs((aTime - avgTime) * (mMagnitudes[source[j]] - aMagnitude)
+                        - (aTime - mTimes[source[j]]) * (avgMagnitude - aMagnitude));
+                if (area > maxArea) {
+                    maxArea = area;
+                    next = j;
+                }
+            }
+            sampled[sampledIndex++] = source[next];
+            a = next;
+        }
+
+        sampled[sampledIndex] = source[to - 1];
+        return sampled;
+    }
+}
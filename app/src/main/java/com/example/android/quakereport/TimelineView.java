@@ -0,0 +1,274 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.View;
+
+import androidx.core.content.ContextCompat;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Draws the magnitude of earthquakes over time. Pinch to zoom and drag to pan the time axis.
+ * <p>
+ * The view never draws the raw history: every time the viewport changes, a
+ * {@link TimelineSeries} downsamples it on a background thread to about two points per
+ * pixel, and the view draws the latest result it received.
+ */
+public class TimelineView extends View {
+
+    /**
+     * Points drawn per horizontal pixel
+     */
+    private static final int POINTS_PER_PIXEL = 2;
+
+    /**
+     * Smallest visible time range, in milliseconds
+     */
+    private static final long MIN_VISIBLE_MILLIS = 60 * 60 * 1000;
+
+    /**
+     * A single thread, so downsampling requests run in order and never on the UI thread.
+     * Created on demand and shut down when the view is detached.
+     */
+    private ExecutorService mExecutor;
+
+    private final Paint mLinePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+    private final Paint mAxisPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+    private final ScaleGestureDetector mScaleDetector;
+
+    private final GestureDetector mGestureDetector;
+
+    /**
+     * Series being shown, built in the background
+     */
+    private volatile TimelineSeries mSeries;
+
+    /**
+     * Latest downsampled points, only touched on the UI thread
+     */
+    private TimelineSeries.Points mPoints;
+
+    /**
+     * Incremented on every new list of earthquakes, so a series built for an older list is
+     * dropped; panning or zooming does not touch it
+     */
+    private int mSeriesGeneration;
+
+    /**
+     * Incremented on every downsample request, so a result for an older viewport is dropped
+     */
+    private volatile int mDownsampleGeneration;
+
+    /**
+     * Visible time range, in milliseconds since the Epoch
+     */
+    private long mViewStart;
+    private long mViewEnd;
+
+    /**
+     * Reused buffer of line segments for {@link Canvas#drawLines}
+     */
+    private float[] mLineBuffer = new float[0];
+
+    public TimelineView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        mLinePaint.setColor(ContextCompat.getColor(context, R.color.colorAccent));
+        mLinePaint.setStrokeWidth(getResources().getDisplayMetrics().density);
+        mAxisPaint.setColor(ContextCompat.getColor(context, R.color.textColorEarthquakeDetails));
+        mAxisPaint.setTextSize(12 * getResources().getDisplayMetrics().scaledDensity);
+
+        mScaleDetector = new ScaleGestureDetector(context, new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+            @Override
+            public boolean onScale(ScaleGestureDetector detector) {
+                long span = mViewEnd - mViewStart;
+                long newSpan = Math.max(MIN_VISIBLE_MILLIS, (long) (span / detector.getScaleFactor()));
+                double focus = detector.getFocusX() / Math.max(1, getWidth());
+                long focusTime = mViewStart + (long) (span * focus);
+                setViewport(focusTime - (long) (newSpan * focus), focusTime - (long) (newSpan * focus) + newSpan);
+                return true;
+            }
+        });
+        mGestureDetector = new GestureDetector(context, new GestureDetector.SimpleOnGestureListener() {
+            @Override
+            public boolean onDown(MotionEvent e) {
+                return true;
+            }
+
+            @Override
+            public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX, float distanceY) {
+                long shift = (long) ((mViewEnd - mViewStart) * (double) distanceX / Math.max(1, getWidth()));
+                setViewport(mViewStart + shift, mViewEnd + shift);
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Shows the given earthquakes. Sorting them and building the series happen in the background.
+     */
+    public void setEarthquakes(final List<Earthquake> earthquakes) {
+        final int generation = ++mSeriesGeneration;
+        executor().execute(new Runnable() {
+            @Override
+            public void run() {
+                final TimelineSeries series = new TimelineSeries(earthquakes);
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != mSeriesGeneration) {
+                            return;
+                        }
+                        mSeries = series;
+                        mPoints = null;
+                        mViewStart = series.getStartTime();
+                        mViewEnd = Math.max(series.getEndTime(), mViewStart + MIN_VISIBLE_MILLIS);
+                        requestDownsample();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Moves the visible time range, keeping it inside the series, and redraws.
+     */
+    private void setViewport(long start, long end) {
+        TimelineSeries series = mSeries;
+        if (series == null) {
+            return;
+        }
+        long span = end - start;
+        long maxSpan = Math.max(series.getEndTime() - series.getStartTime(), MIN_VISIBLE_MILLIS);
+        if (span > maxSpan) {
+            span = maxSpan;
+        }
+        start = Math.max(series.getStartTime(), Math.min(start, series.getStartTime() + maxSpan - span));
+        mViewStart = start;
+        mViewEnd = start + span;
+        // Redraw the previous points at the new position right away, the new ones follow
+        invalidate();
+        requestDownsample();
+    }
+
+    /**
+     * Downsamples the visible range in the background, then redraws with the result.
+     */
+    private void requestDownsample() {
+        final TimelineSeries series = mSeries;
+        if (series == null || getWidth() == 0) {
+            return;
+        }
+        final int generation = ++mDownsampleGeneration;
+        final long start = mViewStart;
+        final long end = mViewEnd;
+        final int maxPoints = getWidth() * POINTS_PER_PIXEL;
+        executor().execute(new Runnable() {
+            @Override
+            public void run() {
+                if (generation != mDownsampleGeneration) {
+                    // A newer viewport is already queued
+                    return;
+                }
+                final TimelineSeries.Points points = series.downsample(start, end, maxPoints);
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (series == mSeries) {
+                            mPoints = points;
+                            invalidate();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        requestDownsample();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if (mExecutor != null) {
+            mExecutor.shutdownNow();
+            mExecutor = null;
+        }
+    }
+
+    private ExecutorService executor() {
+        if (mExecutor == null) {
+            mExecutor = Executors.newSingleThreadExecutor();
+        }
+        return mExecutor;
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        boolean handled = mScaleDetector.onTouchEvent(event);
+        handled |= mGestureDetector.onTouchEvent(event);
+        return handled || super.onTouchEvent(event);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        TimelineSeries series = mSeries;
+        TimelineSeries.Points points = mPoints;
+        if (series == null || points == null || points.times.length == 0) {
+            return;
+        }
+
+        float left = getPaddingLeft();
+        float top = getPaddingTop();
+        float width = getWidth() - getPaddingLeft() - getPaddingRight();
+        float height = getHeight() - getPaddingTop() - getPaddingBottom();
+        double span = Math.max(1, mViewEnd - mViewStart);
+        double minMagnitude = Math.floor(series.getMinMagnitude());
+        double magnitudeRange = Math.max(1, Math.ceil(series.getMaxMagnitude()) - minMagnitude);
+
+        int segments = points.times.length - 1;
+        if (mLineBuffer.length < segments * 4) {
+            mLineBuffer = new float[segments * 4];
+        }
+        float previousX = 0;
+        float previousY = 0;
+        for (int i = 0; i < points.times.length; i++) {
+            float x = left + (float) ((points.times[i] - mViewStart) / span * width);
+            float y = top + height - (float) ((points.magnitudes[i] - minMagnitude) / magnitudeRange * height);
+            if (i > 0) {
+                int offset = (i - 1) * 4;
+                mLineBuffer[offset] = previousX;
+                mLineBuffer[offset + 1] = previousY;
+                mLineBuffer[offset + 2] = x;
+                mLineBuffer[offset + 3] = y;
+            }
+            previousX = x;
+            previousY = y;
+        }
+        canvas.save();
+        canvas.clipRect(left, top, left + width, top + height);
+        if (segments > 0) {
+            canvas.drawLines(mLineBuffer, 0, segments * 4, mLinePaint);
+        } else {
+            canvas.drawCircle(previousX, previousY, mLinePaint.getStrokeWidth() * 2, mLinePaint);
+        }
+        canvas.restore();
+
+        // Magnitude scale on the left edge
+        canvas.drawText(String.valueOf((int) (minMagnitude + magnitudeRange)), left, top + mAxisPaint.getTextSize(), mAxisPaint);
+        canvas.drawText(String.valueOf((int) minMagnitude), left, top + height, mAxisPaint);
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.android.quakereport;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the {@link AlertRuleEngine} against a recorded USGS CSV feed.
+ */
+public class AlertRuleEngineTest {
+
+    /**
+     * A home in San Francisco, alerted about M3+ within 100 km
+     */
+    private static final AlertRule NEARBY = new AlertRule("nearby", 3.0, 37.7749, -122.4194, 100);
+
+    private static final AlertRule WORLDWIDE = new AlertRule("worldwide", 6.5);
+
+    private List<Earthquake> mEarthquakes;
+
+    @Before
+    public void setUp() throws IOException {
+        mEarthquakes = decode("feeds/events.csv");
+        assertEquals(6, mEarthquakes.size());
+    }
+
+    @Test
+    public void evaluate_matchesNearbyAndWorldwideRules() {
+        AlertRuleEngine engine = new AlertRuleEngine(Arrays.asList(NEARBY, WORLDWIDE), null);
+
+        Set<String> alerts = keysOf(engine.evaluate(mEarthquakes));
+
+        // The M2.5 near home is too small, Los Angeles is too far, Chile is too small
+        assertEquals(new HashSet<>(Arrays.asList(
+                "worldwide/us7000a1b2",
+                "nearby/nc73400001",
+                "nearby/us7000a1b3",
+                "worldwide/us7000a1b3")), alerts);
+    }
+
+    @Test
+    public void evaluate_dedupesByEventId() throws IOException {
+        AlertRuleEngine engine = new AlertRuleEngine(Arrays.asList(NEARBY, WORLDWIDE), null);
+        assertEquals(4, engine.evaluate(mEarthquakes).size());
+
+        // The same events decoded again, as a refresh would return them
+        assertTrue(engine.evaluate(decode("feeds/events.csv")).isEmpty());
+
+        // An update of an alerted event keeps its id and stays silent, a new event alerts
+        Earthquake updated = new Earthquake("nc73400001", 3.7, "2 km NE of Berkeley, CA",
+                1591003815250L, "", 37.8716, -122.2727, 8.12);
+        Earthquake added = new Earthquake("nc73400003", 3.1, "3 km W of Oakland, CA",
+                1591010000000L, "", 37.80, -122.30, 5.0);
+        assertEquals(Collections.singleton("nearby/nc73400003"),
+                keysOf(engine.evaluate(Arrays.asList(updated, added))));
+    }
+
+    @Test
+    public void evaluate_keepsDedupeAcrossRestarts() {
+        AlertRuleEngine engine = new AlertRuleEngine(Arrays.asList(NEARBY, WORLDWIDE), null);
+        engine.evaluate(mEarthquakes);
+
+        AlertRuleEngine restarted = new AlertRuleEngine(Arrays.asList(NEARBY, WORLDWIDE),
+                engine.getAlertedKeys());
+        assertTrue(restarted.evaluate(mEarthquakes).isEmpty());
+    }
+
+    private List<Earthquake> decode(String resource) throws IOException {
+        InputStream inputStream = getClass().getClassLoader().getResourceAsStream(resource);
+        try {
+            return DelimitedTextDecoder.csv().decode(inputStream);
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private static Set<String> keysOf(List<AlertRuleEngine.Alert> alerts) {
+        List<String> keys = new ArrayList<>();
+        for (AlertRuleEngine.Alert alert : alerts) {
+            keys.add(alert.getRule().getId() + "/" + alert.getEarthquake().getId());
+        }
+        Set<String> keySet = new HashSet<>(keys);
+        // No pair alerts twice within one batch
+        assertEquals(keys.size(), keySet.size());
+        return keySet;
+    }
+}
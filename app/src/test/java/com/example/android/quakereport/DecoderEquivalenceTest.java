@@ -0,0 +1,65 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Decodes the same recorded USGS events in the csv, text and GeoJSON formats, which must give
+ * the same earthquakes.
+ */
+public class DecoderEquivalenceTest {
+
+    private static final double DELTA = 1e-9;
+
+    @Test
+    public void decode_csvAndTextMatchGeoJson() throws IOException {
+        List<Earthquake> geoJson = decode(new GeoJsonDecoder(), "feeds/events.geojson");
+        List<Earthquake> csv = decode(DelimitedTextDecoder.csv(), "feeds/events.csv");
+        List<Earthquake> text = decode(DelimitedTextDecoder.text(), "feeds/events.txt");
+
+        assertEquals(6, geoJson.size());
+        assertSameEarthquakes(geoJson, csv);
+        assertSameEarthquakes(geoJson, text);
+    }
+
+    @Test
+    public void decode_missingColumnReturnsNull() throws IOException {
+        // No "mag" column, e.g. a different format than the one asked for
+        String body = "time,latitude,longitude,depth,id,place\n"
+                + "2020-06-01T12:00:00.000Z,38.2107,142.5312,29.5,us7000a1b2,Japan\n";
+        assertNull(DelimitedTextDecoder.csv().decode(new ByteArrayInputStream(body.getBytes("UTF-8"))));
+    }
+
+    private static void assertSameEarthquakes(List<Earthquake> expected, List<Earthquake> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Earthquake e = expected.get(i);
+            Earthquake a = actual.get(i);
+            String id = e.getId();
+            assertEquals(id, e.getId(), a.getId());
+            assertEquals(id, e.getMagnitude(), a.getMagnitude(), DELTA);
+            assertEquals(id, e.getLocation(), a.getLocation());
+            assertEquals(id, e.getTimeInMilliseconds(), a.getTimeInMilliseconds());
+            assertEquals(id, e.getUrl(), a.getUrl());
+            assertEquals(id, e.getLatitude(), a.getLatitude(), DELTA);
+            assertEquals(id, e.getLongitude(), a.getLongitude(), DELTA);
+            assertEquals(id, e.getDepth(), a.getDepth(), DELTA);
+        }
+    }
+
+    private List<Earthquake> decode(EarthquakeDecoder decoder, String resource) throws IOException {
+        InputStream inputStream = getClass().getClassLoader().getResourceAsStream(resource);
+        try {
+            return decoder.decode(inputStream);
+        } finally {
+            inputStream.close();
+        }
+    }
+}